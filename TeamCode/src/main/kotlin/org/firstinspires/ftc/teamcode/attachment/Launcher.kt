@@ -9,6 +9,7 @@ import com.qualcomm.robotcore.hardware.PIDFCoefficients
 import dev.kingssack.volt.annotations.VoltAction
 import dev.kingssack.volt.attachment.Attachment
 import kotlin.math.abs
+import org.firstinspires.ftc.robotcore.external.Func
 import org.firstinspires.ftc.robotcore.external.Telemetry
 import org.firstinspires.ftc.robotcore.external.navigation.DistanceUnit
 
@@ -180,34 +181,32 @@ class Launcher(
             )
 
             addLine()
-            addData("Target", "%.1f".format(currentVelocity))
-            addData("Left Motor", "%.1f".format(leftMotor.velocity))
-            addData("Left Error", "%.1f".format(leftMotor.velocity - currentVelocity))
-            addData("Right Motor", "%.1f".format(rightMotor.velocity))
-            addData("Right Error", "%.1f".format(rightMotor.velocity - currentVelocity))
-            addData("Delta", "%.2f (avg: %.2f)".format(currentDelta, averageVelocityDelta))
+            addData("Target", "%.1f", currentVelocity)
+            addData("Left Motor", "%.1f", leftMotor.velocity)
+            addData("Left Error", "%.1f", leftMotor.velocity - currentVelocity)
+            addData("Right Motor", "%.1f", rightMotor.velocity)
+            addData("Right Error", "%.1f", rightMotor.velocity - currentVelocity)
+            addData("Delta", "%.2f (avg: %.2f)", currentDelta, averageVelocityDelta)
             addData(
                 "Delta Range",
-                "[%.2f, %.2f]"
-                    .format(
-                        if (minVelocityDelta == Double.POSITIVE_INFINITY) 0.0 else minVelocityDelta,
-                        if (maxVelocityDelta == Double.NEGATIVE_INFINITY) 0.0 else maxVelocityDelta,
-                    ),
+                "[%.2f, %.2f]",
+                if (minVelocityDelta == Double.POSITIVE_INFINITY) 0.0 else minVelocityDelta,
+                if (maxVelocityDelta == Double.NEGATIVE_INFINITY) 0.0 else maxVelocityDelta,
             )
 
             if (isSpinningUp) {
                 val currentSpinUpTime = System.currentTimeMillis() - spinUpStartTime
                 addLine()
-                addData("Spin-Up", "%dms (in progress)".format(currentSpinUpTime))
-                addData("Avg Spin-Up", "%.0fms".format(averageSpinUpTime))
+                addData("Spin-Up", "%dms (in progress)", currentSpinUpTime)
+                addData("Avg Spin-Up", "%.0fms", averageSpinUpTime)
             } else if (lastSpinUpTime > 0) {
                 addLine()
-                addData("Last Spin-Up", "%dms".format(lastSpinUpTime))
-                addData("Avg Spin-Up", "%.0fms".format(averageSpinUpTime))
+                addData("Last Spin-Up", "%dms", lastSpinUpTime)
+                addData("Avg Spin-Up", "%.0fms", averageSpinUpTime)
             }
 
             addLine()
-            addData("Measured Distance", distanceSensor.getDistance(DistanceUnit.INCH))
+            addData("Measured Distance", Func { distanceSensor.getDistance(DistanceUnit.INCH) })
         }
 
     override fun stop() {
@@ -47,6 +47,7 @@ abstract class Gabe<T : Drivetrain>(hardwareMap: HardwareMap, override val drive
     val rgb by ledDriver("rgb")
 
     private val huskyLens by huskyLens("lens")
+    private val tagBlocks = polled(10.0, huskyLens) { huskyLens.blocks() }
     private val distanceSensor by distanceSensor("l")
 
     private val leftLauncherMotor by motorEx("fll")
@@ -111,7 +112,7 @@ abstract class Gabe<T : Drivetrain>(hardwareMap: HardwareMap, override val drive
     context(telemetry: Telemetry)
     fun getDetectedAprilTags(id: Int? = null): Array<out HuskyLens.Block> {
         // Get AprilTags
-        val blocks = huskyLens.blocks()
+        val blocks = tagBlocks.value
         telemetry.addData("Block count", blocks.size)
 
         // If an id is provided, filter to matching blocks; otherwise return all blocks.
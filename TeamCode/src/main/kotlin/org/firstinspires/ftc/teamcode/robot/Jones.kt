@@ -14,7 +14,10 @@ import org.firstinspires.ftc.robotcore.external.Telemetry
 import org.firstinspires.ftc.robotcore.external.hardware.camera.WebcamName
 import org.firstinspires.ftc.robotcore.external.hardware.camera.controls.ExposureControl
 import org.firstinspires.ftc.robotcore.external.hardware.camera.controls.GainControl
+import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit
 import org.firstinspires.ftc.robotcore.external.navigation.DistanceUnit
+import org.firstinspires.ftc.robotcore.external.navigation.Position
+import org.firstinspires.ftc.robotcore.external.navigation.YawPitchRollAngles
 import org.firstinspires.ftc.teamcode.attachment.Classifier
 import org.firstinspires.ftc.teamcode.attachment.Launcher
 import org.firstinspires.ftc.teamcode.attachment.Pusher
@@ -54,6 +57,11 @@ abstract class Jones<T : Drivetrain>(hardwareMap: HardwareMap, override val driv
         @JvmField var launcherLowVelocity: Double = 1240.0
         @JvmField var cameraExposureMs: Int = 6
         @JvmField var cameraGain: Int = 230
+        @JvmField var cameraX: Double = 0.0
+        @JvmField var cameraY: Double = 0.0
+        @JvmField var cameraZ: Double = 0.0
+        @JvmField var cameraYaw: Double = 0.0
+        @JvmField var cameraPitch: Double = -90.0
     }
 
     // --- Hardware ---
@@ -103,7 +111,13 @@ abstract class Jones<T : Drivetrain>(hardwareMap: HardwareMap, override val driv
 
     // --- AprilTag Detection ---
 
-    private val aprilTag: AprilTagProcessor = AprilTagProcessor.easyCreateWithDefaults()
+    protected val aprilTag: AprilTagProcessor =
+        AprilTagProcessor.Builder()
+            .setCameraPose(
+                Position(DistanceUnit.INCH, cameraX, cameraY, cameraZ, 0),
+                YawPitchRollAngles(AngleUnit.DEGREES, cameraYaw, cameraPitch, 0.0, 0),
+            )
+            .build()
     val visionPortal: VisionPortal =
         VisionPortal.easyCreateWithDefaults(
             hardwareMap.get(WebcamName::class.java, "Webcam 1"),
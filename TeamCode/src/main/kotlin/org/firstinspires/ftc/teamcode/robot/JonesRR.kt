@@ -9,10 +9,16 @@ import com.qualcomm.robotcore.hardware.DcMotorSimple
 import com.qualcomm.robotcore.hardware.HardwareMap
 import dev.kingssack.volt.attachment.drivetrain.rr.mecanum.DriveEncoderMecanumRoadRunnerDrivetrain
 import dev.kingssack.volt.attachment.drivetrain.rr.mecanum.MecanumRoadRunnerDrivetrain
+import org.firstinspires.ftc.robotcore.external.Telemetry
+import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit
+import org.firstinspires.ftc.robotcore.external.navigation.DistanceUnit
 
 /**
  * [Jones] with [DriveEncoderMecanumRoadRunnerDrivetrain] drivetrain.
  *
+ * When [aprilTagCorrection] is enabled, odometry is corrected with the robot pose from every fresh
+ * goal AprilTag detection, matched to the odometry pose at the time the camera frame was taken.
+ *
  * @param hardwareMap The FTC hardware map.
  * @param initialPose The initial pose of the robot.
  */
@@ -51,7 +57,30 @@ class JonesRR(hardwareMap: HardwareMap, initialPose: Pose2d = Pose2d(Vector2d(0.
             ),
         ),
     ) {
+    context(telemetry: Telemetry)
+    override fun updateAttachments() {
+        super.updateAttachments()
+        if (!aprilTagCorrection) return
+
+        val detections = aprilTag.freshDetections ?: return
+        for (detection in detections) {
+            if (detection.id !in localizationTagIds) continue
+            val robotPose = detection.robotPose ?: continue
+            val position = robotPose.position.toUnit(DistanceUnit.INCH)
+            drivetrain.correctPose(
+                Pose2d(position.x, position.y, robotPose.orientation.getYaw(AngleUnit.RADIANS)),
+                detection.frameAcquisitionNanoTime,
+            )
+        }
+    }
+
     companion object {
+        // The obelisk tags only show the motif and are not placed for localization
+        private val localizationTagIds = setOf(20, 24)
+
+        // Off until the camera pose in Jones is measured, since a wrong one corrupts odometry
+        @JvmField var aprilTagCorrection: Boolean = false
+
         @JvmField var logoFacingDirection: LogoFacingDirection = LogoFacingDirection.UP
         @JvmField var usbFacingDirection: UsbFacingDirection = UsbFacingDirection.RIGHT
 
@@ -4,6 +4,7 @@ import com.acmerobotics.dashboard.telemetry.TelemetryPacket
 import com.acmerobotics.roadrunner.Action
 import dev.kingssack.volt.opmode.VoltOpMode
 import dev.kingssack.volt.robot.Robot
+import dev.kingssack.volt.util.telemetry.LoopProfiler
 import java.util.concurrent.ConcurrentLinkedQueue
 
 abstract class AIOpMode<R : Robot>(
@@ -35,10 +36,15 @@ abstract class AIOpMode<R : Robot>(
         }
 
         aiServer.setActionCallback { actionId, params -> executeAction(actionId, params) }
+        LoopProfiler.reset()
         while (opModeIsActive()) {
+            LoopProfiler.beginTick()
             telemetry.addData("Status", "Agent is running")
+            robot.beginTick()
             tick()
             telemetry.update()
+            robot.endTick()
+            LoopProfiler.endTick()
         }
         aiServer.stop()
         ActionRegistry.clear()
@@ -23,6 +23,15 @@ abstract class Attachment(val name: String) {
 
     private var lastFaultHash: Int? = null
 
+    /**
+     * The minimum time in milliseconds between refreshes of this attachment's telemetry. Zero
+     * refreshes it with every Driver Station update. State changes always refresh it.
+     */
+    open val telemetryPeriodMs: Long = 0
+
+    /** Attachments with a higher priority are listed first in telemetry. */
+    open val telemetryPriority: Int = 0
+
     /** Sets the state of the attachment to [newState]. */
     protected fun setState(newState: AttachmentState) {
         _state.value = newState
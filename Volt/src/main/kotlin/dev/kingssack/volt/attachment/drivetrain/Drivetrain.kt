@@ -5,6 +5,8 @@ import dev.kingssack.volt.attachment.Attachment
 
 /** Base class for all drivetrain attachments. */
 abstract class Drivetrain : Attachment("Drivetrain") {
+    override val telemetryPriority = 10
+
     /**
      * Set the drive powers.
      *
@@ -12,4 +14,10 @@ abstract class Drivetrain : Attachment("Drivetrain") {
      * @see PoseVelocity2d
      */
     abstract fun setDrivePowers(powers: PoseVelocity2d)
+
+    /** Prepares the drivetrain for a new tick. Called by the robot before anything else runs. */
+    open fun beginTick() {}
+
+    /** Releases the drivetrain's resources. Called by the robot once the OpMode has ended. */
+    open fun close() {}
 }
@@ -10,6 +10,8 @@ import com.pedropathing.paths.PathBuilder
 import com.pedropathing.paths.PathChain
 import dev.kingssack.volt.annotations.VoltAction
 import dev.kingssack.volt.attachment.drivetrain.Drivetrain
+import dev.kingssack.volt.integrations.pp.PathChainCache
+import dev.kingssack.volt.integrations.pp.PathChainCache.Companion.shape
 import dev.kingssack.volt.integrations.pp.PedroPathingActionBuilder
 import dev.kingssack.volt.util.Degrees
 import dev.kingssack.volt.util.Radians
@@ -27,6 +29,10 @@ import org.firstinspires.ftc.robotcore.external.Telemetry
  * @param follower the path follower instance
  * @param initialPose the robot's initial pose
  * @property pose the robot's current pose
+ * @property pathChains the built path chains of the drivetrain
+ * @property followerUpdates how many times the follower has been updated
+ * @property duplicateFollowerUpdates how many follower updates were skipped because the follower
+ *   had already been updated that tick
  */
 abstract class PedroPathingDrivetrain(
     protected val follower: Follower,
@@ -35,11 +41,43 @@ abstract class PedroPathingDrivetrain(
     val pose: Pose
         get() = follower.pose
 
+    val pathChains = PathChainCache()
+
+    var followerUpdates = 0L
+        private set
+
+    var duplicateFollowerUpdates = 0L
+        private set
+
+    // Set once ticks begin; until then every update goes through
+    private var ticking = false
+    private var updatedThisTick = false
+
     init {
         follower.setStartingPose(initialPose)
         follower.update()
     }
 
+    override fun beginTick() {
+        ticking = true
+        updatedThisTick = false
+    }
+
+    /**
+     * Updates the follower, unless it has already been updated this tick. Actions and the
+     * drivetrain all call this, so the follower reads its localizer and computes its control
+     * exactly once per tick.
+     */
+    fun updateFollower() {
+        if (ticking && updatedThisTick) {
+            duplicateFollowerUpdates++
+            return
+        }
+        updatedThisTick = true
+        followerUpdates++
+        follower.update()
+    }
+
     fun startTeleOpDrive() {
         follower.startTeleOpDrive()
     }
@@ -57,17 +95,21 @@ abstract class PedroPathingDrivetrain(
     @VoltAction(name = "Follow Path", description = "Follows the given path using PedroPathing")
     fun pathTo(pathChain: PathChain): Action = Action {
         if (!follower.isBusy) follower.followPath(pathChain, true)
-        follower.update()
+        updateFollower()
         follower.isBusy
     }
 
+    private fun cachedPath(key: Any, block: PathBuilder.() -> PathBuilder): Action =
+        pathTo(pathChains.getOrBuild(key) { follower.pathBuilder().block().build() })
+
     /**
      * Follows the given [line].
      *
      * @return the action
      */
     @VoltAction(name = "Line To", description = "Follows the given line")
-    fun lineTo(line: BezierLine): Action = pathTo(follower.pathBuilder().addPath(line).build())
+    fun lineTo(line: BezierLine): Action =
+        cachedPath(listOf("lineTo", shape(line.controlPoints))) { addPath(line) }
 
     /**
      * Follows the given [line] while linearly interpolating the heading from [initial] to [final].
@@ -79,13 +121,9 @@ abstract class PedroPathingDrivetrain(
         description = "Follows the given line while linearly interpolating the heading in radians",
     )
     fun lineToLinearHeading(line: BezierLine, initial: Radians, final: Radians): Action =
-        pathTo(
-            follower
-                .pathBuilder()
-                .addPath(line)
-                .setLinearHeadingInterpolation(initial.value, final.value)
-                .build()
-        )
+        cachedPath(listOf("lineToLinearHeading", shape(line.controlPoints), initial, final)) {
+            addPath(line).setLinearHeadingInterpolation(initial.value, final.value)
+        }
 
     /**
      * Follows the given [line] while linearly interpolating the heading from [initial] to [final].
@@ -97,13 +135,7 @@ abstract class PedroPathingDrivetrain(
         description = "Follows the given line while linearly interpolating the heading in degrees",
     )
     fun lineToLinearHeading(line: BezierLine, initial: Degrees, final: Degrees): Action =
-        pathTo(
-            follower
-                .pathBuilder()
-                .addPath(line)
-                .setLinearHeadingInterpolation(initial.toRadians().value, final.toRadians().value)
-                .build()
-        )
+        lineToLinearHeading(line, initial.toRadians(), final.toRadians())
 
     /**
      * Follow the given [line] with a constant [heading].
@@ -115,13 +147,9 @@ abstract class PedroPathingDrivetrain(
         description = "Follows the given line with a constant heading in radians",
     )
     fun lineToConstantHeading(line: BezierLine, heading: Radians): Action =
-        pathTo(
-            follower
-                .pathBuilder()
-                .addPath(line)
-                .setConstantHeadingInterpolation(heading.value)
-                .build()
-        )
+        cachedPath(listOf("lineToConstantHeading", shape(line.controlPoints), heading)) {
+            addPath(line).setConstantHeadingInterpolation(heading.value)
+        }
 
     /**
      * Follow the given [line] with a constant [heading].
@@ -133,13 +161,7 @@ abstract class PedroPathingDrivetrain(
         description = "Follows the given line with a constant heading in degrees",
     )
     fun lineToConstantHeading(line: BezierLine, heading: Degrees): Action =
-        pathTo(
-            follower
-                .pathBuilder()
-                .addPath(line)
-                .setConstantHeadingInterpolation(heading.toRadians().value)
-                .build()
-        )
+        lineToConstantHeading(line, heading.toRadians())
 
     /**
      * Follow the given [line] while tangentially interpolating the heading.
@@ -151,7 +173,9 @@ abstract class PedroPathingDrivetrain(
         description = "Follows the given line while tangentially interpolating the heading",
     )
     fun lineToTangentHeading(line: BezierLine): Action =
-        pathTo(follower.pathBuilder().addPath(line).setTangentHeadingInterpolation().build())
+        cachedPath(listOf("lineToTangentHeading", shape(line.controlPoints))) {
+            addPath(line).setTangentHeadingInterpolation()
+        }
 
     /**
      * Follows the given [curve].
@@ -159,7 +183,8 @@ abstract class PedroPathingDrivetrain(
      * @return the action
      */
     @VoltAction(name = "Spline To", description = "Follows the given curve")
-    fun splineTo(curve: BezierCurve): Action = pathTo(follower.pathBuilder().addPath(curve).build())
+    fun splineTo(curve: BezierCurve): Action =
+        cachedPath(listOf("splineTo", shape(curve.controlPoints))) { addPath(curve) }
 
     /**
      * Follow the given [curve] while linearly interpolating the heading from [initial] to [final].
@@ -171,13 +196,9 @@ abstract class PedroPathingDrivetrain(
         description = "Follows the given curve while linearly interpolating the heading in radians",
     )
     fun splineToLinearHeading(curve: BezierCurve, initial: Radians, final: Radians): Action =
-        pathTo(
-            follower
-                .pathBuilder()
-                .addPath(curve)
-                .setLinearHeadingInterpolation(initial.value, final.value)
-                .build()
-        )
+        cachedPath(listOf("splineToLinearHeading", shape(curve.controlPoints), initial, final)) {
+            addPath(curve).setLinearHeadingInterpolation(initial.value, final.value)
+        }
 
     /**
      * Follow the given [curve] while linearly interpolating the heading from [initial] to [final].
@@ -189,13 +210,7 @@ abstract class PedroPathingDrivetrain(
         description = "Follows the given curve while linearly interpolating the heading in degrees",
     )
     fun splineToLinearHeading(curve: BezierCurve, initial: Degrees, final: Degrees): Action =
-        pathTo(
-            follower
-                .pathBuilder()
-                .addPath(curve)
-                .setLinearHeadingInterpolation(initial.toRadians().value, final.toRadians().value)
-                .build()
-        )
+        splineToLinearHeading(curve, initial.toRadians(), final.toRadians())
 
     /**
      * Follow the given [curve] with a constant [heading].
@@ -207,13 +222,9 @@ abstract class PedroPathingDrivetrain(
         description = "Follows the given curve with a constant heading in radians",
     )
     fun splineToConstantHeading(curve: BezierCurve, heading: Radians): Action =
-        pathTo(
-            follower
-                .pathBuilder()
-                .addPath(curve)
-                .setConstantHeadingInterpolation(heading.value)
-                .build()
-        )
+        cachedPath(listOf("splineToConstantHeading", shape(curve.controlPoints), heading)) {
+            addPath(curve).setConstantHeadingInterpolation(heading.value)
+        }
 
     /**
      * Follow the given [curve] with a constant [heading].
@@ -225,13 +236,7 @@ abstract class PedroPathingDrivetrain(
         description = "Follows the given curve with a constant heading in degrees",
     )
     fun splineToConstantHeading(curve: BezierCurve, heading: Degrees): Action =
-        pathTo(
-            follower
-                .pathBuilder()
-                .addPath(curve)
-                .setConstantHeadingInterpolation(heading.toRadians().value)
-                .build()
-        )
+        splineToConstantHeading(curve, heading.toRadians())
 
     /**
      * Follow the given [curve] while tangentially interpolating the heading.
@@ -239,7 +244,9 @@ abstract class PedroPathingDrivetrain(
      * @return the action
      */
     fun splineToTangentHeading(curve: BezierCurve): Action =
-        pathTo(follower.pathBuilder().addPath(curve).setTangentHeadingInterpolation().build())
+        cachedPath(listOf("splineToTangentHeading", shape(curve.controlPoints))) {
+            addPath(curve).setTangentHeadingInterpolation()
+        }
 
     /**
      * Creates a path following action starting from [startPose].
@@ -250,27 +257,35 @@ abstract class PedroPathingDrivetrain(
         startPose: Pose = pose,
         block: PedroPathingActionBuilder.() -> PedroPathingActionBuilder,
     ): Action {
-        return PedroPathingActionBuilder(follower, startPose).block().build()
+        return PedroPathingActionBuilder(follower, startPose, pathChains, ::updateFollower)
+            .block()
+            .build()
     }
 
     /**
      * Creates a path following action from a PathBuilder.
      *
+     * @param key identifies [block] so its chain is built once and cached in [pathChains], or null
+     *   to build it every time
      * @return an action that follows a path
      */
-    fun followPath(block: PathBuilder.() -> Unit): Action {
+    fun followPath(key: Any? = null, block: PathBuilder.() -> Unit): Action {
+        if (key != null) return cachedPath(key) { apply(block) }
         return pathTo(follower.pathBuilder().apply(block).build())
     }
 
     context(telemetry: Telemetry)
     override fun update() {
-        follower.update()
+        updateFollower()
 
         super.update()
         with(telemetry) {
             addData("x", follower.pose.x)
             addData("y", follower.pose.y)
             addData("heading (deg)", Math.toDegrees(follower.pose.heading))
+            if (duplicateFollowerUpdates > 0) {
+                addData("skipped follower updates", duplicateFollowerUpdates)
+            }
         }
     }
 }
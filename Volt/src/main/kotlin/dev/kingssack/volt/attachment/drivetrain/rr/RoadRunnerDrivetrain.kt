@@ -1,5 +1,6 @@
 package dev.kingssack.volt.attachment.drivetrain.rr
 
+import com.acmerobotics.dashboard.canvas.Canvas
 import com.acmerobotics.roadrunner.*
 import com.acmerobotics.roadrunner.ftc.LazyHardwareMapImu
 import com.acmerobotics.roadrunner.ftc.throwIfModulesAreOutdated
@@ -10,11 +11,18 @@ import com.qualcomm.robotcore.hardware.VoltageSensor
 import dev.kingssack.volt.annotations.VoltAction
 import dev.kingssack.volt.attachment.drivetrain.Drivetrain
 import dev.kingssack.volt.util.Degrees
+import dev.kingssack.volt.integrations.rr.PoseCorrector
+import dev.kingssack.volt.integrations.rr.PoseHistory
 import dev.kingssack.volt.integrations.rr.localizer.RoadRunnerLocalizer
+import dev.kingssack.volt.integrations.rr.localizer.ThreadedLocalizer
+import dev.kingssack.volt.robot.BulkCache
+import dev.kingssack.volt.robot.Robot
 import dev.kingssack.volt.util.Radians
+import dev.kingssack.volt.util.hardware.VoltageSampler
 import dev.kingssack.volt.util.toRadians
 import org.firstinspires.ftc.robotcore.external.Telemetry
-import java.util.*
+import java.io.File
+import java.util.concurrent.Future
 
 /**
  * A RoadRunner [dev.kingssack.volt.attachment.drivetrain.Drivetrain].
@@ -23,8 +31,13 @@ import java.util.*
  * @param orientation the control hub's orientation
  * @param T the type of kinematics to use
  * @property voltageSensor the voltage sensor
+ * @property batteryVoltage the filtered battery voltage, sampled in the background
  * @property lazyImu the lazy IMU
  * @property localizer the localizer
+ * @property pose the robot's pose estimate
+ * @property poseHistory the most recent pose estimates
+ * @property poseCorrector corrects the pose estimate with measurements from [correctPose]
+ * @property trajectories the compiled trajectories of the drivetrain
  */
 abstract class RoadRunnerDrivetrain<T : Any>(
     hardwareMap: HardwareMap,
@@ -38,38 +51,173 @@ abstract class RoadRunnerDrivetrain<T : Any>(
 
     val voltageSensor: VoltageSensor = hardwareMap.voltageSensor.iterator().next()
 
+    val batteryVoltage = VoltageSampler(voltageSensor)
+
     val lazyImu = LazyHardwareMapImu(hardwareMap, "imu", orientation)
 
     abstract val localizer: RoadRunnerLocalizer
 
-    private val poseHistory = LinkedList<Pose2d>()
+    val poseHistory = PoseHistory()
+
+    val poseCorrector = PoseCorrector(poseHistory)
+
+    private var threadedLocalizer: ThreadedLocalizer? = null
+    private var lastSnapshotNs = 0L
+
+    var pose: Pose2d
+        get() = (threadedLocalizer ?: localizer).pose
+        set(value) {
+            (threadedLocalizer ?: localizer).pose = value
+        }
 
     init {
         throwIfModulesAreOutdated(hardwareMap)
+    }
 
-        for (module in hardwareMap.getAll(LynxModule::class.java)) {
-            module.setBulkCachingMode(LynxModule.BulkCachingMode.AUTO)
-        }
+    /**
+     * Runs the [localizer] on its own thread at [rateHz] instead of once per tick, so odometry
+     * runs at a higher and steadier rate. Every tick then reads the latest estimate without
+     * waiting for hardware. Use [pose] rather than [localizer] afterwards.
+     *
+     * @param bulkCache the robot's [Robot.bulkCache], which the localizer reads encoders through,
+     *   or null if the localizer does not read encoders from a hub
+     * @param rateHz how often the localizer is updated
+     * @param hubs the hubs the localizer reads encoders from, by default every hub
+     * @return the running localizer
+     */
+    fun localizeInBackground(
+        bulkCache: BulkCache?,
+        rateHz: Double = 200.0,
+        hubs: List<LynxModule> = bulkCache?.hubs.orEmpty(),
+    ): ThreadedLocalizer {
+        threadedLocalizer?.close()
+        return ThreadedLocalizer(localizer, rateHz, bulkCache, hubs).also { threadedLocalizer = it }
     }
 
-    private fun updatePoseEstimate(): PoseVelocity2d {
-        val vel = localizer.update()
-        poseHistory.add(localizer.pose)
+    /** Stops background localization, keeping its latest estimate as the [localizer]'s pose. */
+    override fun close() {
+        threadedLocalizer?.close()
+        threadedLocalizer = null
+    }
 
-        while (poseHistory.size > 100) {
-            poseHistory.removeFirst()
+    /**
+     * Updates the localizer and records the new pose in [poseHistory].
+     *
+     * Background estimates are recorded at the time they were made, and only once each, so
+     * [poseHistory] lookups by time stay accurate.
+     *
+     * @return the robot's velocity
+     */
+    fun updatePoseEstimate(): PoseVelocity2d {
+        val threaded = threadedLocalizer
+        if (threaded == null) {
+            val vel = localizer.update()
+            poseHistory.add(localizer.pose)
+            return vel
         }
 
-        return vel
+        threaded.update()
+        val snapshot = threaded.snapshot
+        if (snapshot.timestampNs != lastSnapshotNs) {
+            poseHistory.add(snapshot.pose, snapshot.timestampNs)
+            lastSnapshotNs = snapshot.timestampNs
+        }
+        return snapshot.velocity
+    }
+
+    /**
+     * Corrects the pose estimate with [measured], the robot's pose measured by an absolute source
+     * such as AprilTags at [timestampNs], using the [poseCorrector].
+     *
+     * @param measured the measured pose
+     * @param timestampNs the [System.nanoTime] the measurement was taken at
+     * @return whether the measurement was used
+     */
+    fun correctPose(measured: Pose2d, timestampNs: Long): Boolean {
+        pose = poseCorrector.correct(pose, measured, timestampNs) ?: return false
+        return true
+    }
+
+    /** Draws the path through [poseHistory] on [c]. */
+    protected fun drawPoseHistory(c: Canvas) {
+        c.setStrokeWidth(1)
+        c.setStroke("#3F51B5")
+        poseHistory.strokePolyline(c)
     }
 
+    /** Parameters used to build every trajectory of the drivetrain. */
+    protected open val trajectoryBuilderParams =
+        TrajectoryBuilderParams(1e-6, ProfileParams(0.25, 0.1, 1e-2))
+
+    /**
+     * Create an action that follows [turn].
+     *
+     * @param turn the time-profiled turn
+     * @return the action
+     */
+    protected abstract fun turnAction(turn: TimeTurn): Action
+
+    /**
+     * Create an action that follows [trajectory].
+     *
+     * @param trajectory the time-profiled trajectory
+     * @return the action
+     */
+    protected abstract fun followTrajectoryAction(trajectory: TimeTrajectory): Action
+
+    /**
+     * Parameters that change how the drivetrain's trajectories are built, such as its drive
+     * parameters. Compiled trajectories are stored on disk when this is set, and discarded when it
+     * changes.
+     */
+    protected open val trajectoryParams: Any?
+        get() = null
+
+    val trajectories by lazy {
+        val bundle =
+            trajectoryParams?.let { params ->
+                TrajectoryBundle(
+                    File(TrajectoryBundle.directory, "${javaClass.simpleName}.bin"),
+                    TrajectoryBundle.fingerprint(javaClass.name, params, trajectoryBuilderParams),
+                )
+            }
+        TrajectoryCache(::actionBuilder, { turnAction(it) }, { followTrajectoryAction(it) }, bundle)
+    }
+
+    private fun actionBuilder(
+        beginPose: Pose2d,
+        turnActionFactory: (TimeTurn) -> Action,
+        trajectoryActionFactory: (TimeTrajectory) -> Action,
+    ): TrajectoryActionBuilder =
+        TrajectoryActionBuilder(
+            { turnActionFactory(it) },
+            { trajectoryActionFactory(it) },
+            trajectoryBuilderParams,
+            beginPose,
+            0.0,
+            defaultTurnConstraints,
+            defaultVelConstraint,
+            defaultAccelConstraint,
+        )
+
     /**
      * Create a new trajectory action builder.
      *
      * @param beginPose the current pose of the robot
      * @return the action builder
      */
-    abstract fun driveActionBuilder(beginPose: Pose2d): TrajectoryActionBuilder
+    open fun driveActionBuilder(beginPose: Pose2d): TrajectoryActionBuilder =
+        actionBuilder(beginPose, { turnAction(it) }, { followTrajectoryAction(it) })
+
+    /**
+     * Compile the trajectories created by [block] on a background thread, so getting them later
+     * takes no path generation. Newly compiled trajectories are then saved to disk, so later runs
+     * load them instead.
+     *
+     * @return a future that completes once [block] has run
+     */
+    fun precompile(block: RoadRunnerDrivetrain<T>.() -> Unit): Future<*> =
+        trajectories.precompile { block() }
 
     /**
      * Strafe from [from] to [to].
@@ -77,7 +225,8 @@ abstract class RoadRunnerDrivetrain<T : Any>(
      * @return the action
      */
     @VoltAction(name = "Strafe To", "Strafe the robot to a certain position")
-    fun strafeTo(from: Pose2d, to: Vector2d): Action = driveActionBuilder(from).strafeTo(to).build()
+    fun strafeTo(from: Pose2d, to: Vector2d): Action =
+        trajectories.get(listOf("strafeTo", to), from) { strafeTo(to) }
 
     /**
      * Strafe from [from] to [to].
@@ -86,7 +235,9 @@ abstract class RoadRunnerDrivetrain<T : Any>(
      */
     @VoltAction(name = "Strafe To Linear Heading", "Strafe the robot to a certain pose")
     fun strafeToLinearHeading(from: Pose2d, to: Pose2d): Action =
-        driveActionBuilder(from).strafeToLinearHeading(to.position, to.heading).build()
+        trajectories.get(listOf("strafeToLinearHeading", to), from) {
+            strafeToLinearHeading(to.position, to.heading)
+        }
 
     /**
      * Spline from [from] to [to] with [tangent].
@@ -95,7 +246,7 @@ abstract class RoadRunnerDrivetrain<T : Any>(
      */
     @VoltAction(name = "Spline To", "Follow a spline to a certain pose")
     fun splineTo(from: Pose2d, to: Vector2d, tangent: Rotation2d): Action =
-        driveActionBuilder(from).splineTo(to, tangent).build()
+        trajectories.get(listOf("splineTo", to, tangent), from) { splineTo(to, tangent) }
 
     /**
      * Spline from [from] to [to] with [tangent].
@@ -104,7 +255,9 @@ abstract class RoadRunnerDrivetrain<T : Any>(
      */
     @VoltAction(name = "Spline To Linear Heading", "Follow a spline to a certain pose")
     fun splineToLinearHeading(from: Pose2d, to: Pose2d, tangent: Rotation2d): Action =
-        driveActionBuilder(from).splineToLinearHeading(to, tangent).build()
+        trajectories.get(listOf("splineToLinearHeading", to, tangent), from) {
+            splineToLinearHeading(to, tangent)
+        }
 
     /**
      * Turn from [from] to [to].
@@ -113,7 +266,7 @@ abstract class RoadRunnerDrivetrain<T : Any>(
      */
     @VoltAction(name = "Turn To Radians", "Turn the robot to a certain heading in radians")
     fun turnTo(from: Pose2d, to: Radians): Action =
-        driveActionBuilder(from).turnTo(to.value).build()
+        trajectories.get(listOf("turnTo", to.value), from) { turnTo(to.value) }
 
     /**
      * Turn from [from] to [to].
@@ -121,8 +274,7 @@ abstract class RoadRunnerDrivetrain<T : Any>(
      * @return the action
      */
     @VoltAction(name = "Turn To Degrees", "Turn the robot to a certain heading in degrees")
-    fun turnTo(from: Pose2d, to: Degrees): Action =
-        driveActionBuilder(from).turnTo(to.toRadians().value).build()
+    fun turnTo(from: Pose2d, to: Degrees): Action = turnTo(from, to.toRadians())
 
     /**
      * Turn a certain number of [radians].
@@ -132,7 +284,7 @@ abstract class RoadRunnerDrivetrain<T : Any>(
      */
     @VoltAction(name = "Turn Radians", "Turn the robot a certain number of radians")
     fun turn(from: Pose2d, radians: Radians): Action =
-        driveActionBuilder(from).turn(radians.value).build()
+        trajectories.get(listOf("turn", radians.value), from) { turn(radians.value) }
 
     /**
      * Turn a certain number of [degrees].
@@ -141,19 +293,22 @@ abstract class RoadRunnerDrivetrain<T : Any>(
      * @return the action
      */
     @VoltAction(name = "Turn Degrees", "Turn the robot a certain number of degrees")
-    fun turn(from: Pose2d, degrees: Degrees): Action =
-        driveActionBuilder(from).turn(degrees.toRadians().value).build()
+    fun turn(from: Pose2d, degrees: Degrees): Action = turn(from, degrees.toRadians())
 
     /**
      * Build a trajectory action.
      *
      * @param from the starting pose
+     * @param key identifies [block] so it is compiled once and cached in [trajectories], or null
+     *   to build it every time
      * @return the built action
      */
     fun trajectory(
-        from: Pose2d = localizer.pose,
+        from: Pose2d = pose,
+        key: Any? = null,
         block: TrajectoryActionBuilder.() -> TrajectoryActionBuilder,
     ): Action {
+        if (key != null) return trajectories.get(key, from, block)
         return driveActionBuilder(from).block().build()
     }
 
@@ -163,9 +318,10 @@ abstract class RoadRunnerDrivetrain<T : Any>(
 
         super.update()
         with(telemetry) {
-            addData("x", localizer.pose.position.x)
-            addData("y", localizer.pose.position.y)
-            addData("heading (deg)", Math.toDegrees(localizer.pose.heading.toDouble()))
+            val pose = pose
+            addData("x", pose.position.x)
+            addData("y", pose.position.y)
+            addData("heading (deg)", Math.toDegrees(pose.heading.toDouble()))
         }
     }
 }
@@ -0,0 +1,400 @@
+package dev.kingssack.volt.attachment.drivetrain.rr
+
+import com.acmerobotics.roadrunner.Action
+import com.acmerobotics.roadrunner.Arclength
+import com.acmerobotics.roadrunner.DisplacementProfile
+import com.acmerobotics.roadrunner.DualNum
+import com.acmerobotics.roadrunner.NullAction
+import com.acmerobotics.roadrunner.ParallelAction
+import com.acmerobotics.roadrunner.Pose2d
+import com.acmerobotics.roadrunner.Pose2dDual
+import com.acmerobotics.roadrunner.PosePath
+import com.acmerobotics.roadrunner.Rotation2dDual
+import com.acmerobotics.roadrunner.SequentialAction
+import com.acmerobotics.roadrunner.SleepAction
+import com.acmerobotics.roadrunner.TimeProfile
+import com.acmerobotics.roadrunner.TimeTrajectory
+import com.acmerobotics.roadrunner.TimeTurn
+import com.acmerobotics.roadrunner.Vector2dDual
+import dev.kingssack.volt.util.VoltLogs
+import java.io.BufferedOutputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.io.RandomAccessFile
+import java.lang.reflect.Modifier
+import java.nio.DoubleBuffer
+import java.nio.channels.FileChannel
+import kotlin.math.PI
+import kotlin.math.ceil
+import kotlin.math.max
+import org.firstinspires.ftc.robotcore.internal.system.AppUtil
+
+/**
+ * Compiled trajectories stored on disk, so they survive app restarts.
+ *
+ * A bundle is a single file of every trajectory compiled by one drivetrain, memory-mapped when it
+ * is opened so loading a trajectory only reads the samples it uses. Trajectories are keyed by a
+ * hash of their start pose and definition. The file also records a fingerprint of the drivetrain's
+ * parameters and of the installed app, and is ignored if either has changed, so stale trajectories
+ * are never loaded. Keys do not describe a trajectory's waypoints, so every deploy starts over.
+ *
+ * Paths are stored as samples of their pose and its first two derivatives every [SAMPLE_SPACING]
+ * inches and interpolated between them, so loaded trajectories follow the original path closely
+ * rather than exactly. Only trajectories made of segments, sleeps and their compositions can be
+ * stored.
+ *
+ * Trajectories loaded or stored since the bundle was opened are saved first, followed by the most
+ * recently used of the rest, up to [maxEntries], so the file does not grow without bound.
+ *
+ * @param file the bundle file
+ * @param fingerprint identifies the drivetrain parameters the trajectories were compiled with
+ * @property maxEntries the most trajectories saved
+ */
+class TrajectoryBundle(
+    private val file: File,
+    private val fingerprint: Long,
+    val maxEntries: Int = 128,
+) {
+    private var mapped: DoubleBuffer? = null
+
+    // In the order they were saved, most recently used first
+    private val index = LinkedHashMap<Long, IntArray>()
+    private val added = LinkedHashMap<Long, DoubleArray>()
+    private val loaded = LinkedHashSet<Long>()
+
+    init {
+        require(maxEntries > 0) { "Max entries must be positive, got $maxEntries" }
+        try {
+            if (file.exists()) read()
+        } catch (e: Exception) {
+            VoltLogs.log("Error reading trajectory bundle ${file.name}: ${e.message.toString()}")
+            index.clear()
+            mapped = null
+        }
+    }
+
+    /** How many trajectories the bundle holds. */
+    val size: Int
+        @Synchronized get() = index.size + added.size
+
+    /**
+     * Loads the trajectory stored under [key].
+     *
+     * @return the trajectory's action tree, or null if it is not stored
+     */
+    @Synchronized
+    internal fun load(key: String): Action? {
+        val hash = hash(key)
+        added[hash]?.let { return Reader(DoubleBuffer.wrap(it), 0).action() }
+        val location = index[hash] ?: return null
+        val action = Reader(mapped ?: return null, location[0]).action()
+        loaded.add(hash)
+        return action
+    }
+
+    /**
+     * Stores [root] under [key] to be written by the next [save].
+     *
+     * @return whether [root] could be stored
+     */
+    @Synchronized
+    internal fun store(key: String, root: Action): Boolean {
+        val writer = Writer()
+        if (!writer.action(root)) return false
+        added[hash(key)] = writer.toArray()
+        return true
+    }
+
+    /** Writes the trajectories to the bundle file if any were added since it was opened. */
+    @Synchronized
+    fun save() {
+        if (added.isEmpty()) return
+
+        val entries = LinkedHashMap<Long, DoubleArray>()
+        for ((hash, data) in added) {
+            if (entries.size == maxEntries) break
+            entries[hash] = data
+        }
+        val mapped = mapped
+        if (mapped != null) {
+            // Trajectories used this run are kept first, then the most recently used of the rest
+            for (hash in loaded + index.keys) {
+                if (entries.size == maxEntries) break
+                if (hash in entries) continue
+                val location = index[hash] ?: continue
+                val data = DoubleArray(location[1])
+                mapped.position(location[0])
+                mapped.get(data)
+                entries[hash] = data
+            }
+        }
+
+        file.parentFile?.mkdirs()
+        val temp = File(file.path + ".tmp")
+        DataOutputStream(BufferedOutputStream(FileOutputStream(temp))).use { out ->
+            out.writeInt(MAGIC)
+            out.writeInt(VERSION)
+            out.writeLong(fingerprint)
+            out.writeInt(entries.size)
+            var offset = 0
+            for ((hash, data) in entries) {
+                out.writeLong(hash)
+                out.writeInt(offset)
+                out.writeInt(data.size)
+                offset += data.size
+            }
+            repeat(dataStart(entries.size) - headerSize(entries.size)) { out.writeByte(0) }
+            for (data in entries.values) for (value in data) out.writeDouble(value)
+        }
+        if (!temp.renameTo(file)) throw IllegalStateException("Could not replace ${file.path}")
+
+        // The old mapping stays valid after the rename, but the new file is mapped for next time
+        index.clear()
+        added.clear()
+        loaded.clear()
+        read()
+    }
+
+    private fun read() {
+        val buffer =
+            RandomAccessFile(file, "r").use {
+                it.channel.map(FileChannel.MapMode.READ_ONLY, 0, it.length())
+            }
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return
+        if (buffer.getLong() != fingerprint) {
+            VoltLogs.log("Drive parameters changed, ignoring trajectory bundle ${file.name}")
+            return
+        }
+
+        val count = buffer.getInt()
+        for (i in 0 until count) {
+            val hash = buffer.getLong()
+            index[hash] = intArrayOf(buffer.getInt(), buffer.getInt())
+        }
+        buffer.position(dataStart(count))
+        mapped = buffer.slice().asDoubleBuffer()
+    }
+
+    private class Writer {
+        private var values = DoubleArray(256)
+        private var size = 0
+
+        fun toArray(): DoubleArray = values.copyOf(size)
+
+        private fun put(value: Double) {
+            if (size == values.size) values = values.copyOf(size * 2)
+            values[size++] = value
+        }
+
+        fun action(action: Action): Boolean =
+            when (action) {
+                is TrajectorySegment ->
+                    if (action.turn != null) turn(action.turn) else trajectory(action.trajectory!!)
+                is SequentialAction -> {
+                    put(SEQUENTIAL)
+                    put(action.initialActions.size.toDouble())
+                    action.initialActions.all(::action)
+                }
+                is ParallelAction -> {
+                    put(PARALLEL)
+                    put(action.initialActions.size.toDouble())
+                    action.initialActions.all(::action)
+                }
+                is SleepAction -> {
+                    put(SLEEP)
+                    put(action.dt)
+                    true
+                }
+                is NullAction -> {
+                    put(NULL)
+                    true
+                }
+                else -> false
+            }
+
+        private fun turn(turn: TimeTurn): Boolean {
+            put(TURN)
+            put(turn.beginPose.position.x)
+            put(turn.beginPose.position.y)
+            put(turn.beginPose.heading.toDouble())
+            put(turn.angle)
+            profile(turn.profile)
+            return true
+        }
+
+        private fun trajectory(trajectory: TimeTrajectory): Boolean {
+            put(TRAJECTORY)
+            profile(trajectory.profile)
+
+            val path = trajectory.path
+            val length = path.length()
+            val count = max(2, ceil(length / SAMPLE_SPACING).toInt() + 1)
+            put(length)
+            put(count.toDouble())
+
+            var lastHeading = 0.0
+            for (i in 0 until count) {
+                val pose = path[length * i / (count - 1), 3]
+                for (axis in arrayOf(pose.position.x, pose.position.y)) {
+                    put(axis[0])
+                    put(axis[1])
+                    put(axis[2])
+                }
+
+                // Headings are unwrapped so they can be interpolated
+                var heading = pose.heading.value().toDouble()
+                if (i > 0) {
+                    while (heading - lastHeading > PI) heading -= 2 * PI
+                    while (heading - lastHeading < -PI) heading += 2 * PI
+                }
+                lastHeading = heading
+                val headingVel = pose.heading.velocity()
+                put(heading)
+                put(headingVel[0])
+                put(headingVel[1])
+            }
+            return true
+        }
+
+        private fun profile(profile: TimeProfile) {
+            val displacement = profile.dispProfile
+            for (values in arrayOf(displacement.disps, displacement.vels, displacement.accels)) {
+                put(values.size.toDouble())
+                values.forEach(::put)
+            }
+        }
+    }
+
+    private class Reader(private val buffer: DoubleBuffer, private var position: Int) {
+        private fun next(): Double = buffer.get(position++)
+
+        fun action(): Action =
+            when (next()) {
+                SEQUENTIAL -> SequentialAction(List(next().toInt()) { action() })
+                PARALLEL -> ParallelAction(List(next().toInt()) { action() })
+                SLEEP -> SleepAction(next())
+                NULL -> NullAction()
+                TURN -> {
+                    val beginPose = Pose2d(next(), next(), next())
+                    val angle = next()
+                    TrajectorySegment(TimeTurn(beginPose, angle, profile()), null)
+                }
+                TRAJECTORY -> {
+                    val profile = profile()
+                    val length = next()
+                    val count = next().toInt()
+                    val path = SampledPosePath(buffer, position, length, count)
+                    position += count * SAMPLE_SIZE
+                    TrajectorySegment(null, TimeTrajectory(path, profile))
+                }
+                else -> throw IllegalStateException("Corrupt trajectory bundle")
+            }
+
+        private fun profile(): TimeProfile {
+            val disps = List(next().toInt()) { next() }
+            val vels = List(next().toInt()) { next() }
+            val accels = List(next().toInt()) { next() }
+            return TimeProfile(DisplacementProfile(disps, vels, accels))
+        }
+    }
+
+    /** A path interpolated from samples read straight out of a bundle. */
+    private class SampledPosePath(
+        private val samples: DoubleBuffer,
+        private val start: Int,
+        private val length: Double,
+        private val count: Int,
+    ) : PosePath {
+        override fun length() = length
+
+        override fun get(s: Double, n: Int): Pose2dDual<Arclength> {
+            val u = if (length > 0.0) (s / length * (count - 1)).coerceIn(0.0, count - 1.0) else 0.0
+            val i = minOf(u.toInt(), count - 2)
+            val f = u - i
+            val a = start + i * SAMPLE_SIZE
+            val b = a + SAMPLE_SIZE
+
+            fun dual(offset: Int) =
+                DualNum<Arclength>(
+                    DoubleArray(n) { k ->
+                        if (k < 3) {
+                            val lo = samples.get(a + offset + k)
+                            lo + (samples.get(b + offset + k) - lo) * f
+                        } else 0.0
+                    }
+                )
+
+            return Pose2dDual(Vector2dDual(dual(0), dual(3)), Rotation2dDual.exp(dual(6)))
+        }
+    }
+
+    companion object {
+        /** The distance between path samples in inches. */
+        const val SAMPLE_SPACING = 0.25
+
+        private const val MAGIC = 0x56545242
+        private const val VERSION = 1
+        private const val SAMPLE_SIZE = 9
+
+        private const val SEQUENTIAL = 1.0
+        private const val PARALLEL = 2.0
+        private const val SLEEP = 3.0
+        private const val NULL = 4.0
+        private const val TURN = 5.0
+        private const val TRAJECTORY = 6.0
+
+        /** The directory bundles are stored in by default. */
+        val directory: File
+            get() = File(AppUtil.ROBOT_DATA_DIR, "volt/trajectories")
+
+        /**
+         * Hashes [parts] into a fingerprint, including the value of every field of objects that
+         * do not describe themselves, such as drive parameters. The time the app was installed is
+         * included too, so trajectories changed by a new deploy are never loaded from an old one.
+         */
+        fun fingerprint(vararg parts: Any?): Long =
+            hash(parts.joinToString("|", "$buildId|") { describe(it, 0) })
+
+        // Unique to each install of the app, or to each run if it cannot be read
+        private val buildId: Long by lazy {
+            try {
+                val context = AppUtil.getDefContext()
+                context.packageManager.getPackageInfo(context.packageName, 0).lastUpdateTime
+            } catch (e: Exception) {
+                VoltLogs.log("Error reading app install time: ${e.message.toString()}")
+                System.nanoTime()
+            }
+        }
+
+        private fun describe(part: Any?, depth: Int): String {
+            if (part == null || part is CharSequence || part is Number || part is Boolean) {
+                return part.toString()
+            }
+            if (part is Enum<*> || depth > 2) return part.toString()
+            val fields =
+                part.javaClass.declaredFields.filter { !Modifier.isStatic(it.modifiers) }
+            if (fields.isEmpty()) return part.toString()
+            return fields
+                .sortedBy { it.name }
+                .joinToString(",", "${part.javaClass.name}(", ")") {
+                    it.isAccessible = true
+                    "${it.name}=${describe(it.get(part), depth + 1)}"
+                }
+        }
+
+        private fun hash(text: String): Long {
+            // 64-bit FNV-1a, so keys of different trajectories are very unlikely to collide
+            var hash = -0x340d631b7bdddcdbL
+            for (c in text) {
+                hash = hash xor c.code.toLong()
+                hash *= 0x100000001b3L
+            }
+            return hash
+        }
+
+        private fun headerSize(count: Int) = 20 + 16 * count
+
+        private fun dataStart(count: Int) = (headerSize(count) + 7) and 7.inv()
+    }
+}
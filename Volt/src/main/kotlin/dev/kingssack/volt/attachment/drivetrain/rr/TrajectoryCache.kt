@@ -0,0 +1,204 @@
+package dev.kingssack.volt.attachment.drivetrain.rr
+
+import com.acmerobotics.dashboard.telemetry.TelemetryPacket
+import com.acmerobotics.roadrunner.Action
+import com.acmerobotics.roadrunner.InstantAction
+import com.acmerobotics.roadrunner.NullAction
+import com.acmerobotics.roadrunner.ParallelAction
+import com.acmerobotics.roadrunner.Pose2d
+import com.acmerobotics.roadrunner.SequentialAction
+import com.acmerobotics.roadrunner.SleepAction
+import com.acmerobotics.roadrunner.TimeTrajectory
+import com.acmerobotics.roadrunner.TimeTurn
+import com.acmerobotics.roadrunner.TrajectoryActionBuilder
+import dev.kingssack.volt.util.VoltLogs
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.FutureTask
+
+/**
+ * Compiled trajectories of a [RoadRunnerDrivetrain], keyed by their start pose and definition.
+ *
+ * Generating and profiling a path is slow, so each trajectory is compiled once into its
+ * [TimeTrajectory] and [TimeTurn] segments. Every request for it afterwards gets a new action
+ * built from those segments, which takes no path math. Trajectories can be compiled ahead of time
+ * on a background thread with [precompile], typically during an autonomous' initialization.
+ *
+ * Trajectories are only reused if every action in them can be recreated. Markers must be
+ * [InstantAction]s, [SleepAction]s or compositions of them; other marker actions may hold state,
+ * so trajectories using them are built again on every request.
+ *
+ * Trajectories compiled by [precompile] are kept until [clear]. Others, such as ones from a live
+ * start pose in teleop, are rarely requested again, so only the [capacity] most recently used are
+ * kept.
+ *
+ * With a [bundle], precompiled trajectories are also stored on disk and loaded from it on later
+ * runs.
+ * Their definitions should then have a stable [toString], such as strings and data classes.
+ */
+class TrajectoryCache
+internal constructor(
+    private val newBuilder:
+        (Pose2d, (TimeTurn) -> Action, (TimeTrajectory) -> Action) -> TrajectoryActionBuilder,
+    private val turnAction: (TimeTurn) -> Action,
+    private val trajectoryAction: (TimeTrajectory) -> Action,
+    val bundle: TrajectoryBundle? = null,
+    val capacity: Int = 64,
+) {
+    private data class Key(val from: Pose2d, val definition: Any)
+
+    private class Compiled(val root: Action, val reusable: Boolean)
+
+    private val precompiled = ConcurrentHashMap<Key, FutureTask<Compiled>>()
+
+    // Guarded by itself
+    private val recent =
+        object : LinkedHashMap<Key, FutureTask<Compiled>>(16, 0.75f, true) {
+            override fun removeEldestEntry(
+                eldest: MutableMap.MutableEntry<Key, FutureTask<Compiled>>
+            ) = size > capacity
+        }
+
+    init {
+        require(capacity > 0) { "Capacity must be positive, got $capacity" }
+    }
+
+    /** How many trajectories have been compiled or are being compiled. */
+    val size: Int
+        get() = precompiled.size + synchronized(recent) { recent.size }
+
+    /**
+     * Gets the trajectory from [from] described by [block], compiling it if needed.
+     *
+     * @param definition identifies [block], along with anything else that changes its path
+     * @param from the starting pose
+     * @return a new action following the trajectory
+     */
+    fun get(
+        definition: Any,
+        from: Pose2d,
+        block: TrajectoryActionBuilder.() -> TrajectoryActionBuilder,
+    ): Action {
+        val key = Key(from, definition)
+        val task = task(key, block)
+        val trajectory =
+            try {
+                task.get()
+            } catch (e: ExecutionException) {
+                precompiled.remove(key, task)
+                synchronized(recent) { if (recent[key] === task) recent.remove(key) }
+                throw e.cause ?: e
+            }
+
+        return if (trajectory.reusable) instantiate(trajectory.root)
+        else newBuilder(from, turnAction, trajectoryAction).block().build()
+    }
+
+    // Gets the task compiling key, starting it on this thread if there is none
+    private fun task(
+        key: Key,
+        block: TrajectoryActionBuilder.() -> TrajectoryActionBuilder,
+    ): FutureTask<Compiled> {
+        precompiled[key]?.let { return it }
+        val created = FutureTask { compile(key, block) }
+        val existing =
+            if (precompiling.get() == true) precompiled.putIfAbsent(key, created)
+            else
+                synchronized(recent) {
+                    recent[key].also { if (it == null) recent[key] = created }
+                }
+        return existing ?: created.also { it.run() }
+    }
+
+    /**
+     * Runs [block] on a background thread so the trajectories it gets are compiled ahead of time
+     * and kept until [clear], then saves the [bundle].
+     *
+     * @return a future that completes once [block] has run
+     */
+    fun precompile(block: () -> Unit): Future<*> =
+        executor.submit(
+            Runnable {
+                precompiling.set(true)
+                try {
+                    block()
+                    bundle?.save()
+                } catch (e: Exception) {
+                    VoltLogs.log("Error precompiling trajectories: ${e.message.toString()}")
+                } finally {
+                    precompiling.set(false)
+                }
+            }
+        )
+
+    /** Forgets every compiled trajectory. */
+    fun clear() {
+        precompiled.clear()
+        synchronized(recent) { recent.clear() }
+    }
+
+    private fun compile(
+        key: Key,
+        block: TrajectoryActionBuilder.() -> TrajectoryActionBuilder,
+    ): Compiled {
+        val stored = bundle?.let { "${key.from}|${key.definition}" }
+        if (stored != null) {
+            try {
+                bundle?.load(stored)?.let { return Compiled(it, true) }
+            } catch (e: Exception) {
+                VoltLogs.log("Error loading trajectory ${key.definition}: ${e.message.toString()}")
+            }
+        }
+
+        val root =
+            newBuilder(key.from, { TrajectorySegment(it, null) }, { TrajectorySegment(null, it) })
+                .block()
+                .build()
+        val reusable = isReusable(root)
+        // Only precompiled trajectories are worth loading on a later run
+        if (reusable && stored != null && precompiling.get() == true) {
+            bundle?.store(stored, root)
+        }
+        return Compiled(root, reusable)
+    }
+
+    private fun isReusable(action: Action): Boolean =
+        when (action) {
+            is TrajectorySegment,
+            is SleepAction,
+            is InstantAction,
+            is NullAction -> true
+            is SequentialAction -> action.initialActions.all(::isReusable)
+            is ParallelAction -> action.initialActions.all(::isReusable)
+            else -> false
+        }
+
+    private fun instantiate(action: Action): Action =
+        when (action) {
+            is TrajectorySegment ->
+                action.turn?.let(turnAction) ?: trajectoryAction(action.trajectory!!)
+            is SleepAction -> SleepAction(action.dt)
+            is SequentialAction -> SequentialAction(action.initialActions.map(::instantiate))
+            is ParallelAction -> ParallelAction(action.initialActions.map(::instantiate))
+            // Instant and null actions hold no state
+            else -> action
+        }
+
+    private companion object {
+        // Whether the current thread is running a precompile block
+        val precompiling = ThreadLocal<Boolean>()
+
+        val executor =
+            Executors.newSingleThreadExecutor {
+                Thread(it, "Volt trajectories").apply { isDaemon = true }
+            }
+    }
+}
+
+/** Stands in for the drivetrain action following [turn] or [trajectory] while compiling. */
+internal class TrajectorySegment(val turn: TimeTurn?, val trajectory: TimeTrajectory?) : Action {
+    override fun run(p: TelemetryPacket): Boolean =
+        throw IllegalStateException("Compiled segments must be instantiated before running")
+}
@@ -12,7 +12,8 @@ import com.qualcomm.robotcore.hardware.DcMotorSimple
 import com.qualcomm.robotcore.hardware.HardwareMap
 import dev.kingssack.volt.attachment.drivetrain.rr.RoadRunnerDrivetrain
 import dev.kingssack.volt.integrations.rr.Drawing
-import java.util.*
+import dev.kingssack.volt.util.hardware.WriteFilter
+import dev.kingssack.volt.util.telemetry.CompetitionMode
 import kotlin.math.ceil
 import kotlin.math.max
 
@@ -116,25 +117,38 @@ abstract class MecanumRoadRunnerDrivetrain(
     override val defaultAccelConstraint =
         ProfileAccelConstraint(params.minProfileAccel, params.maxProfileAccel)
 
+    override val trajectoryParams: Any
+        get() = params
+
     val leftFront: DcMotorEx =
-        hardwareMap.get(DcMotorEx::class.java, params.leftFrontName).apply {
+        WriteFilter.wrap(hardwareMap.get(DcMotorEx::class.java, params.leftFrontName)).apply {
             direction = params.leftFrontDirection
         }
     val leftBack: DcMotorEx =
-        hardwareMap.get(DcMotorEx::class.java, params.leftBackName).apply {
+        WriteFilter.wrap(hardwareMap.get(DcMotorEx::class.java, params.leftBackName)).apply {
             direction = params.leftBackDirection
         }
     val rightBack: DcMotorEx =
-        hardwareMap.get(DcMotorEx::class.java, params.rightBackName).apply {
+        WriteFilter.wrap(hardwareMap.get(DcMotorEx::class.java, params.rightBackName)).apply {
             direction = params.rightBackDirection
         }
     val rightFront: DcMotorEx =
-        hardwareMap.get(DcMotorEx::class.java, params.rightFrontName).apply {
+        WriteFilter.wrap(hardwareMap.get(DcMotorEx::class.java, params.rightFrontName)).apply {
             direction = params.rightFrontDirection
         }
     private val driveMotors = listOf(leftFront, leftBack, rightBack, rightFront)
 
-    private val poseHistory = LinkedList<Pose2d>()
+    private val controller =
+        HolonomicController(
+            params.axialGain,
+            params.lateralGain,
+            params.headingGain,
+            params.axialVelGain,
+            params.lateralVelGain,
+            params.headingVelGain,
+        )
+    private val feedforward =
+        MotorFeedforward(params.kS, params.kV / params.inPerTick, params.kA / params.inPerTick)
 
     init {
         driveMotors.forEach { it.zeroPowerBehavior = DcMotor.ZeroPowerBehavior.BRAKE }
@@ -199,27 +213,12 @@ abstract class MecanumRoadRunnerDrivetrain(
 
             val robotVelRobot = updatePoseEstimate()
 
-            val command =
-                HolonomicController(
-                        params.axialGain,
-                        params.lateralGain,
-                        params.headingGain,
-                        params.axialVelGain,
-                        params.lateralVelGain,
-                        params.headingVelGain,
-                    )
-                    .compute(txWorldTarget, localizer.pose, robotVelRobot)
+            val command = controller.compute(txWorldTarget, pose, robotVelRobot)
             //            driveCommandWriter.write(DriveCommandMessage(command))
 
             val wheelVels = kinematics.inverse(command)
-            val voltage = voltageSensor.voltage
+            val voltage = batteryVoltage.voltage
 
-            val feedforward =
-                MotorFeedforward(
-                    params.kS,
-                    params.kV / params.inPerTick,
-                    params.kA / params.inPerTick,
-                )
             val leftFrontPower = feedforward.compute(wheelVels.leftFront) / voltage
             val leftBackPower = feedforward.compute(wheelVels.leftBack) / voltage
             val rightBackPower = feedforward.compute(wheelVels.rightBack) / voltage
@@ -239,11 +238,14 @@ abstract class MecanumRoadRunnerDrivetrain(
             rightBack.power = rightBackPower
             rightFront.power = rightFrontPower
 
-            p.put("x", localizer.pose.position.x)
-            p.put("y", localizer.pose.position.y)
-            p.put("heading (deg)", Math.toDegrees(localizer.pose.heading.toDouble()))
+            // Everything below only feeds the dashboard
+            if (CompetitionMode.enabled) return true
 
-            val error = txWorldTarget.value().minusExp(localizer.pose)
+            p.put("x", pose.position.x)
+            p.put("y", pose.position.y)
+            p.put("heading (deg)", Math.toDegrees(pose.heading.toDouble()))
+
+            val error = txWorldTarget.value().minusExp(pose)
             p.put("xError", error.position.x)
             p.put("yError", error.position.y)
             p.put("headingError (deg)", Math.toDegrees(error.heading.toDouble()))
@@ -255,7 +257,7 @@ abstract class MecanumRoadRunnerDrivetrain(
             Drawing.drawRobot(c, txWorldTarget.value())
 
             c.setStroke("#3F51B5")
-            Drawing.drawRobot(c, localizer.pose)
+            Drawing.drawRobot(c, pose)
 
             c.setStroke("#4CAF50FF")
             c.setStrokeWidth(1)
@@ -297,26 +299,11 @@ abstract class MecanumRoadRunnerDrivetrain(
 
             val robotVelRobot = updatePoseEstimate()
 
-            val command =
-                HolonomicController(
-                        params.axialGain,
-                        params.lateralGain,
-                        params.headingGain,
-                        params.axialVelGain,
-                        params.lateralVelGain,
-                        params.headingVelGain,
-                    )
-                    .compute(txWorldTarget, localizer.pose, robotVelRobot)
+            val command = controller.compute(txWorldTarget, pose, robotVelRobot)
             //            driveCommandWriter.write(DriveCommandMessage(command))
 
             val wheelVels = kinematics.inverse(command)
-            val voltage = voltageSensor.voltage
-            val feedforward =
-                MotorFeedforward(
-                    params.kS,
-                    params.kV / params.inPerTick,
-                    params.kA / params.inPerTick,
-                )
+            val voltage = batteryVoltage.voltage
             val leftFrontPower = feedforward.compute(wheelVels.leftFront) / voltage
             val leftBackPower = feedforward.compute(wheelVels.leftBack) / voltage
             val rightBackPower = feedforward.compute(wheelVels.rightBack) / voltage
@@ -331,10 +318,13 @@ abstract class MecanumRoadRunnerDrivetrain(
             //                )
             //            )
 
-            leftFront.power = feedforward.compute(wheelVels.leftFront) / voltage
-            leftBack.power = feedforward.compute(wheelVels.leftBack) / voltage
-            rightBack.power = feedforward.compute(wheelVels.rightBack) / voltage
-            rightFront.power = feedforward.compute(wheelVels.rightFront) / voltage
+            leftFront.power = leftFrontPower
+            leftBack.power = leftBackPower
+            rightBack.power = rightBackPower
+            rightFront.power = rightFrontPower
+
+            // Everything below only feeds the dashboard
+            if (CompetitionMode.enabled) return true
 
             val c = p.fieldOverlay()
             drawPoseHistory(c)
@@ -343,7 +333,7 @@ abstract class MecanumRoadRunnerDrivetrain(
             Drawing.drawRobot(c, txWorldTarget.value())
 
             c.setStroke("#3F51B5")
-            Drawing.drawRobot(c, localizer.pose)
+            Drawing.drawRobot(c, pose)
 
             c.setStroke("#7C4DFFFF")
             c.fillCircle(turn.beginPose.position.x, turn.beginPose.position.y, 2.0)
@@ -357,42 +347,8 @@ abstract class MecanumRoadRunnerDrivetrain(
         }
     }
 
-    private fun updatePoseEstimate(): PoseVelocity2d {
-        val vel = localizer.update()
-        poseHistory.add(localizer.pose)
+    override fun turnAction(turn: TimeTurn): Action = TurnAction(turn)
 
-        while (poseHistory.size > 100) {
-            poseHistory.removeFirst()
-        }
-
-        //        estimatedPoseWriter.write(PoseMessage(localizer.pose))
-
-        return vel
-    }
-
-    private fun drawPoseHistory(c: Canvas) {
-        val xPoints = DoubleArray(poseHistory.size)
-        val yPoints = DoubleArray(poseHistory.size)
-
-        for ((i, t) in poseHistory.withIndex()) {
-            xPoints[i] = t.position.x
-            yPoints[i] = t.position.y
-        }
-
-        c.setStrokeWidth(1)
-        c.setStroke("#3F51B5")
-        c.strokePolyline(xPoints, yPoints)
-    }
-
-    override fun driveActionBuilder(beginPose: Pose2d): TrajectoryActionBuilder =
-        TrajectoryActionBuilder(
-            ::TurnAction,
-            ::FollowTrajectoryAction,
-            TrajectoryBuilderParams(1e-6, ProfileParams(0.25, 0.1, 1e-2)),
-            beginPose,
-            0.0,
-            defaultTurnConstraints,
-            defaultVelConstraint,
-            defaultAccelConstraint,
-        )
+    override fun followTrajectoryAction(trajectory: TimeTrajectory): Action =
+        FollowTrajectoryAction(trajectory)
 }
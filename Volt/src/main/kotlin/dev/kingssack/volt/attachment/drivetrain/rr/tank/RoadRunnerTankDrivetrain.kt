@@ -13,7 +13,8 @@ import com.qualcomm.robotcore.hardware.DcMotorSimple
 import com.qualcomm.robotcore.hardware.HardwareMap
 import dev.kingssack.volt.attachment.drivetrain.rr.RoadRunnerDrivetrain
 import dev.kingssack.volt.integrations.rr.Drawing.drawRobot
-import java.util.*
+import dev.kingssack.volt.util.hardware.WriteFilter
+import dev.kingssack.volt.util.telemetry.CompetitionMode
 import kotlin.math.ceil
 import kotlin.math.max
 
@@ -93,16 +94,26 @@ abstract class RoadRunnerTankDrivetrain(
     override val defaultAccelConstraint =
         ProfileAccelConstraint(params.minProfileAccel, params.maxProfileAccel)
 
+    override val trajectoryParams: Any
+        get() = params
+
     val leftMotors: List<DcMotorEx> =
         params.leftMotorNames.zip(params.leftMotorDirections).map { (name, direction) ->
-            hardwareMap.get(DcMotorEx::class.java, name).apply { this.direction = direction }
+            WriteFilter.wrap(hardwareMap.get(DcMotorEx::class.java, name)).apply {
+                this.direction = direction
+            }
         }
     val rightMotors: List<DcMotorEx> =
         params.rightMotorNames.zip(params.rightMotorDirections).map { (name, direction) ->
-            hardwareMap.get(DcMotorEx::class.java, name).apply { this.direction = direction }
+            WriteFilter.wrap(hardwareMap.get(DcMotorEx::class.java, name)).apply {
+                this.direction = direction
+            }
         }
 
-    private val poseHistory = LinkedList<Pose2d>()
+    private val controller =
+        RamseteController(kinematics.trackWidth, params.ramseteZeta, params.ramseteBBar)
+    private val feedforward =
+        MotorFeedforward(params.kS, params.kV / params.inPerTick, params.kA / params.inPerTick)
 
     //    private val estimatedPoseWriter = DownsampledWriter("ESTIMATED_POSE", 50000000)
     //    private val targetPoseWriter = DownsampledWriter("TARGET_POSE", 50000000)
@@ -171,19 +182,11 @@ abstract class RoadRunnerTankDrivetrain(
 
             updatePoseEstimate()
 
-            val command =
-                RamseteController(kinematics.trackWidth, params.ramseteZeta, params.ramseteBBar)
-                    .compute(x, txWorldTarget, localizer.pose)
+            val command = controller.compute(x, txWorldTarget, pose)
             //            driveCommandWriter.write(DriveCommandMessage(command))
 
             val wheelVels = kinematics.inverse(command)
-            val voltage: Double = voltageSensor.voltage
-            val feedforward =
-                MotorFeedforward(
-                    params.kS,
-                    params.kV / params.inPerTick,
-                    params.kA / params.inPerTick,
-                )
+            val voltage = batteryVoltage.voltage
             val leftPower = feedforward.compute(wheelVels.left) / voltage
             val rightPower = feedforward.compute(wheelVels.right) / voltage
             //            tankCommandWriter.write(TankCommandMessage(voltage, leftPower,
@@ -192,11 +195,14 @@ abstract class RoadRunnerTankDrivetrain(
             leftMotors.forEach { it.power = leftPower }
             rightMotors.forEach { it.power = rightPower }
 
-            p.put("x", localizer.pose.position.x)
-            p.put("y", localizer.pose.position.y)
-            p.put("heading (deg)", Math.toDegrees(localizer.pose.heading.toDouble()))
+            // Everything below only feeds the dashboard
+            if (CompetitionMode.enabled) return true
 
-            val error = txWorldTarget.value().minusExp(localizer.pose)
+            p.put("x", pose.position.x)
+            p.put("y", pose.position.y)
+            p.put("heading (deg)", Math.toDegrees(pose.heading.toDouble()))
+
+            val error = txWorldTarget.value().minusExp(pose)
             p.put("xError", error.position.x)
             p.put("yError", error.position.y)
             p.put("headingError (deg)", Math.toDegrees(error.heading.toDouble()))
@@ -208,7 +214,7 @@ abstract class RoadRunnerTankDrivetrain(
             drawRobot(c, txWorldTarget.value())
 
             c.setStroke("#3F51B5")
-            drawRobot(c, localizer.pose)
+            drawRobot(c, pose)
 
             c.setStroke("#4CAF50FF")
             c.setStrokeWidth(1)
@@ -255,7 +261,7 @@ abstract class RoadRunnerTankDrivetrain(
                         .velocity()
                         .plus(
                             params.turnGain *
-                                localizer.pose.heading.minus(txWorldTarget.heading.value()) +
+                                pose.heading.minus(txWorldTarget.heading.value()) +
                                 params.turnVelGain *
                                     (robotVelRobot.angVel -
                                         txWorldTarget.heading.velocity().value())
@@ -264,13 +270,7 @@ abstract class RoadRunnerTankDrivetrain(
             //            driveCommandWriter.write(DriveCommandMessage(command))
 
             val wheelVels = kinematics.inverse(command)
-            val voltage = voltageSensor.voltage
-            val feedforward =
-                MotorFeedforward(
-                    params.kS,
-                    params.kV / params.inPerTick,
-                    params.kA / params.inPerTick,
-                )
+            val voltage = batteryVoltage.voltage
             val leftPower = feedforward.compute(wheelVels.left) / voltage
             val rightPower = feedforward.compute(wheelVels.right) / voltage
             //            tankCommandWriter.write(TankCommandMessage(voltage, leftPower,
@@ -279,6 +279,9 @@ abstract class RoadRunnerTankDrivetrain(
             leftMotors.forEach { it.power = leftPower }
             rightMotors.forEach { it.power = rightPower }
 
+            // Everything below only feeds the dashboard
+            if (CompetitionMode.enabled) return true
+
             val c = p.fieldOverlay()
             drawPoseHistory(c)
 
@@ -286,7 +289,7 @@ abstract class RoadRunnerTankDrivetrain(
             drawRobot(c, txWorldTarget.value())
 
             c.setStroke("#3F51B5")
-            drawRobot(c, localizer.pose)
+            drawRobot(c, pose)
 
             c.setStroke("#7C4DFFFF")
             c.fillCircle(turn.beginPose.position.x, turn.beginPose.position.y, 2.0)
@@ -300,42 +303,8 @@ abstract class RoadRunnerTankDrivetrain(
         }
     }
 
-    fun updatePoseEstimate(): PoseVelocity2d {
-        val vel = localizer.update()
-        poseHistory.add(localizer.pose)
-
-        while (poseHistory.size > 100) {
-            poseHistory.removeFirst()
-        }
+    override fun turnAction(turn: TimeTurn): Action = TurnAction(turn)
 
-        //        estimatedPoseWriter.write(PoseMessage(localizer.getPose()))
-
-        return vel
-    }
-
-    private fun drawPoseHistory(c: Canvas) {
-        val xPoints = DoubleArray(poseHistory.size)
-        val yPoints = DoubleArray(poseHistory.size)
-
-        for ((i, t) in poseHistory.withIndex()) {
-            xPoints[i] = t.position.x
-            yPoints[i] = t.position.y
-        }
-
-        c.setStrokeWidth(1)
-        c.setStroke("#3F51B5")
-        c.strokePolyline(xPoints, yPoints)
-    }
-
-    override fun driveActionBuilder(beginPose: Pose2d): TrajectoryActionBuilder =
-        TrajectoryActionBuilder(
-            ::TurnAction,
-            ::FollowTrajectoryAction,
-            TrajectoryBuilderParams(1e-6, ProfileParams(0.25, 0.1, 1e-2)),
-            beginPose,
-            0.0,
-            defaultTurnConstraints,
-            defaultVelConstraint,
-            defaultAccelConstraint,
-        )
+    override fun followTrajectoryAction(trajectory: TimeTrajectory): Action =
+        FollowTrajectoryAction(trajectory)
 }
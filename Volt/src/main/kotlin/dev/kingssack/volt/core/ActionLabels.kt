@@ -0,0 +1,53 @@
+package dev.kingssack.volt.core
+
+import com.acmerobotics.roadrunner.Action
+import com.acmerobotics.roadrunner.InstantAction
+import com.acmerobotics.roadrunner.ParallelAction
+import com.acmerobotics.roadrunner.SequentialAction
+import dev.kingssack.volt.annotations.VoltAction
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Resolves the trace label for an [Action].
+ *
+ * Labels only depend on the action's class, so the reflection needed to find them runs once per
+ * class and later lookups are a single map read.
+ */
+internal object ActionLabels {
+    private val labels = ConcurrentHashMap<Class<*>, String>()
+
+    /** Gets the label for [action], inferring and caching it the first time its class is seen. */
+    fun of(action: Action): String =
+        labels[action.javaClass] ?: infer(action.javaClass).also { labels[action.javaClass] = it }
+
+    /** Drops all cached labels so unloaded classes can be collected. */
+    fun clear() {
+        labels.clear()
+    }
+
+    private fun infer(actionClass: Class<*>): String {
+        return when {
+            SequentialAction::class.java.isAssignableFrom(actionClass) ||
+                VoltSequentialAction::class.java.isAssignableFrom(actionClass) -> "Sequence"
+            ParallelAction::class.java.isAssignableFrom(actionClass) ||
+                VoltParallelAction::class.java.isAssignableFrom(actionClass) -> "Parallel"
+            InstantAction::class.java.isAssignableFrom(actionClass) -> "Instant"
+            WaitAction::class.java.isAssignableFrom(actionClass) -> "Wait"
+            else -> {
+                val enclosingMethod = actionClass.enclosingMethod
+                val annotatedName =
+                    enclosingMethod
+                        ?.annotations
+                        ?.filterIsInstance<VoltAction>()
+                        ?.firstOrNull()
+                        ?.name
+
+                actionClass.simpleName.ifBlank {
+                    annotatedName?.takeIf { it.isNotBlank() }
+                        ?: enclosingMethod?.name
+                        ?: "Action of ${actionClass.declaringClass?.simpleName} extending ${actionClass.superclass?.simpleName}"
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package dev.kingssack.volt.core
+
+import com.acmerobotics.dashboard.canvas.Canvas
+import com.acmerobotics.dashboard.telemetry.TelemetryPacket
+import com.acmerobotics.roadrunner.Action
+import com.acmerobotics.roadrunner.InstantAction
+import java.lang.System.nanoTime
+
+/**
+ * An [Action] that can be returned to its initial state and run again without being rebuilt.
+ *
+ * @property canRearm whether [rearm] fully restores this action and everything it wraps
+ */
+interface RearmableAction : Action {
+    val canRearm: Boolean
+        get() = true
+
+    /** Returns the action to the state it was in before it first ran. */
+    fun rearm()
+}
+
+/** Whether this action can be run again after [rearmIfNeeded]. */
+internal val Action.isRearmable: Boolean
+    get() = this is InstantAction || (this is RearmableAction && canRearm)
+
+/** Rearms this action if it holds any run state. */
+internal fun Action.rearmIfNeeded() {
+    if (this is RearmableAction) rearm()
+}
+
+/**
+ * Runs [actions] one after another.
+ *
+ * Unlike RoadRunner's SequentialAction this keeps an index instead of dropping finished actions, so
+ * it does not allocate while running and can be rearmed.
+ */
+class VoltSequentialAction(val actions: List<Action>) : RearmableAction {
+    private var index = 0
+
+    override val canRearm = actions.all { it.isRearmable }
+
+    override fun run(p: TelemetryPacket): Boolean {
+        while (index < actions.size) {
+            if (actions[index].run(p)) return true
+            index++
+        }
+        return false
+    }
+
+    override fun preview(fieldOverlay: Canvas) {
+        for (i in actions.indices) actions[i].preview(fieldOverlay)
+    }
+
+    override fun rearm() {
+        index = 0
+        for (i in actions.indices) actions[i].rearmIfNeeded()
+    }
+}
+
+/**
+ * Runs [actions] simultaneously until every one of them has finished.
+ *
+ * Unlike RoadRunner's ParallelAction this tracks finished actions in a flag array, so it does not
+ * allocate while running and can be rearmed.
+ */
+class VoltParallelAction(val actions: List<Action>) : RearmableAction {
+    private val finished = BooleanArray(actions.size)
+
+    override val canRearm = actions.all { it.isRearmable }
+
+    override fun run(p: TelemetryPacket): Boolean {
+        var running = false
+        for (i in actions.indices) {
+            if (finished[i]) continue
+            if (actions[i].run(p)) running = true else finished[i] = true
+        }
+        return running
+    }
+
+    override fun preview(fieldOverlay: Canvas) {
+        for (i in actions.indices) actions[i].preview(fieldOverlay)
+    }
+
+    override fun rearm() {
+        finished.fill(false)
+        for (i in actions.indices) actions[i].rearmIfNeeded()
+    }
+}
+
+/** Runs until [dt] seconds have elapsed since it first ran. */
+class WaitAction(private val dt: Double) : RearmableAction {
+    private var beginNs = -1L
+
+    override fun run(p: TelemetryPacket): Boolean {
+        if (beginNs == -1L) {
+            beginNs = nanoTime()
+        }
+        val elapsedNs = nanoTime() - beginNs
+        return (elapsedNs / 1e9) < dt
+    }
+
+    override fun rearm() {
+        beginNs = -1L
+    }
+}
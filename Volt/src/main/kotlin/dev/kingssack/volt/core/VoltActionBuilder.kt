@@ -1,13 +1,9 @@
 package dev.kingssack.volt.core
 
 import com.acmerobotics.roadrunner.Action
-import com.acmerobotics.roadrunner.InstantAction
-import com.acmerobotics.roadrunner.ParallelAction
-import com.acmerobotics.roadrunner.SequentialAction
-import dev.kingssack.volt.annotations.VoltAction
 import dev.kingssack.volt.robot.Robot
+import dev.kingssack.volt.util.telemetry.CompetitionMode
 import dev.kingssack.volt.util.telemetry.TracedAction
-import java.lang.System.nanoTime
 
 @DslMarker annotation class VoltBuilderDsl
 
@@ -22,32 +18,10 @@ class VoltActionBuilder<R : Robot>(private val robot: R) {
     private val _actions = mutableListOf<Action>()
 
     private fun addAction(action: Action) {
-        _actions.add(TracedAction(inferName(action), action))
-    }
-
-    private fun inferName(action: Action): String {
-        return when (action) {
-            is SequentialAction -> "Sequence"
-            is ParallelAction -> "Parallel"
-            is InstantAction -> "Instant"
-            else -> {
-                val actionClass = action.javaClass
-
-                val enclosingMethod = actionClass.enclosingMethod
-                val annotatedName =
-                    enclosingMethod
-                        ?.annotations
-                        ?.filterIsInstance<VoltAction>()
-                        ?.firstOrNull()
-                        ?.name
-
-                actionClass.simpleName.ifBlank {
-                    annotatedName?.takeIf { it.isNotBlank() }
-                        ?: enclosingMethod?.name
-                        ?: "Action of ${actionClass.declaringClass?.simpleName} extending ${actionClass.superclass?.simpleName}"
-                }
-            }
-        }
+        // Actions are only traced when someone may be watching
+        _actions.add(
+            if (CompetitionMode.enabled) action else TracedAction(ActionLabels.of(action), action)
+        )
     }
 
     /** Adds an [Action] to the current sequence. */
@@ -57,26 +31,17 @@ class VoltActionBuilder<R : Robot>(private val robot: R) {
 
     /** Adds an [Action] that will run until the specified time duration [dt] has elapsed. */
     fun wait(dt: Double) {
-        var beginNs: Long = -1
-        addAction(
-            Action {
-                if (beginNs == -1L) {
-                    beginNs = nanoTime()
-                }
-                val elapsedNs = nanoTime() - beginNs
-                return@Action (elapsedNs / 1e9) < dt
-            }
-        )
+        addAction(WaitAction(dt))
     }
 
     /** Adds a parallel block of actions that will run simultaneously. */
     fun parallel(block: VoltActionBuilder<R>.() -> Unit) {
-        addAction(ParallelAction(extractActions(block)))
+        addAction(VoltParallelAction(extractActions(block)))
     }
 
     /** Adds a sequential block of actions that will run one after another. */
     fun sequence(block: VoltActionBuilder<R>.() -> Unit) {
-        addAction(SequentialAction(extractActions(block)))
+        addAction(VoltSequentialAction(extractActions(block)))
     }
 
     /** Adds an instant action that executes a block of code immediately. */
@@ -92,8 +57,8 @@ class VoltActionBuilder<R : Robot>(private val robot: R) {
         return VoltActionBuilder(robot).apply(block)._actions
     }
 
-    internal fun build(): SequentialAction {
-        return SequentialAction(_actions)
+    internal fun build(): VoltSequentialAction {
+        return VoltSequentialAction(_actions)
     }
 }
 
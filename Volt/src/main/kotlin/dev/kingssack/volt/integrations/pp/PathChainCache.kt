@@ -0,0 +1,72 @@
+package dev.kingssack.volt.integrations.pp
+
+import com.pedropathing.geometry.Pose
+import com.pedropathing.paths.PathChain
+
+/**
+ * Built [PathChain]s, keyed by what they were built from.
+ *
+ * Building a path computes its curve's arc length tables, so a chain requested again with the same
+ * key is reused instead of built again. The least recently used chain is evicted once more than
+ * [capacity] are stored.
+ *
+ * @property capacity the most chains kept
+ */
+class PathChainCache(val capacity: Int = 32) {
+    private val chains =
+        object : LinkedHashMap<Any, PathChain>(16, 0.75f, true) {
+            override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Any, PathChain>) =
+                size > capacity
+        }
+
+    init {
+        require(capacity > 0) { "Capacity must be positive, got $capacity" }
+    }
+
+    /** How many chains are stored. */
+    val size: Int
+        @Synchronized get() = chains.size
+
+    /** How many requests were answered with a stored chain. */
+    var hits = 0L
+        private set
+
+    /** How many requests had to build their chain. */
+    var misses = 0L
+        private set
+
+    /**
+     * Gets the chain stored under [key], building it with [build] if there is none.
+     *
+     * @param key identifies the chain; equal keys must describe the same chain
+     * @param build builds the chain
+     * @return the chain
+     */
+    @Synchronized
+    fun getOrBuild(key: Any, build: () -> PathChain): PathChain {
+        chains[key]?.let {
+            hits++
+            return it
+        }
+        misses++
+        return build().also { chains[key] = it }
+    }
+
+    /** Removes every chain. */
+    @Synchronized
+    fun clear() {
+        chains.clear()
+    }
+
+    companion object {
+        /** Describes the shape of a curve through [controlPoints] for use in a key. */
+        fun shape(controlPoints: List<Pose>): List<Double> {
+            val shape = ArrayList<Double>(controlPoints.size * 2)
+            for (point in controlPoints) {
+                shape.add(point.x)
+                shape.add(point.y)
+            }
+            return shape
+        }
+    }
+}
@@ -5,65 +5,93 @@ import com.pedropathing.follower.Follower
 import com.pedropathing.geometry.BezierCurve
 import com.pedropathing.geometry.BezierLine
 import com.pedropathing.geometry.Pose
+import com.pedropathing.paths.PathBuilder
+import com.pedropathing.paths.PathChain
 
 @DslMarker annotation class PedroPathingActionBuilderDsl
 
 /**
  * Builder that creates an Action from PedroPathing Paths.
  *
+ * Segments are recorded as they are added and only built into a chain by [buildPathChain]. With a
+ * [cache], a chain with the same segments as one built before is reused without redoing its path
+ * math.
+ *
  * @param follower the follower used to build the path and follow it when the action is executed
  * @param startPose the starting pose of the path
+ * @param cache the cache built chains are kept in, or null to build them every time
+ * @param updateFollower updates the follower while the action runs
  */
 @PedroPathingActionBuilderDsl
-class PedroPathingActionBuilder(private val follower: Follower, startPose: Pose) {
-    private val builder = follower.pathBuilder()
+class PedroPathingActionBuilder(
+    private val follower: Follower,
+    startPose: Pose,
+    private val cache: PathChainCache? = null,
+    private val updateFollower: () -> Unit = follower::update,
+) {
+    private val segments = ArrayList<PathBuilder.() -> Unit>()
+    private val key = ArrayList<Any>()
     private var lastPose = startPose
 
+    private fun segment(
+        kind: String,
+        endPose: Pose,
+        controlPoses: Array<out Pose>,
+        build: PathBuilder.(startPose: Pose) -> Unit,
+    ): PedroPathingActionBuilder {
+        val startPose = lastPose
+        key.add(kind)
+        for (pose in arrayOf(startPose, *controlPoses, endPose)) {
+            key.add(pose.x)
+            key.add(pose.y)
+            key.add(pose.heading)
+        }
+        segments.add { build(this, startPose) }
+        lastPose = endPose
+        return this
+    }
+
     /**
      * Adds a linear segment to the path from the [lastPose] to the [endPose]. The heading will be
      * interpolated linearly between the start and end poses.
      */
-    fun lineTo(endPose: Pose): PedroPathingActionBuilder {
-        builder.addPath(BezierLine(lastPose, endPose))
-        builder.setLinearHeadingInterpolation(lastPose.heading, endPose.heading)
-        lastPose = endPose
-        return this
-    }
+    fun lineTo(endPose: Pose): PedroPathingActionBuilder =
+        segment("lineTo", endPose, emptyArray()) { startPose ->
+            addPath(BezierLine(startPose, endPose))
+            setLinearHeadingInterpolation(startPose.heading, endPose.heading)
+        }
 
     /**
      * Adds a linear segment to the path from the [lastPose] to the [endPose]. The heading will be
      * held constant at the [lastPose]'s heading throughout the segment, regardless of the direction
      * of travel.
      */
-    fun lineToConstantHeading(endPose: Pose): PedroPathingActionBuilder {
-        builder.addPath(BezierLine(lastPose, endPose))
-        builder.setConstantHeadingInterpolation(lastPose.heading)
-        lastPose = endPose
-        return this
-    }
+    fun lineToConstantHeading(endPose: Pose): PedroPathingActionBuilder =
+        segment("lineToConstantHeading", endPose, emptyArray()) { startPose ->
+            addPath(BezierLine(startPose, endPose))
+            setConstantHeadingInterpolation(startPose.heading)
+        }
 
     /**
      * Adds a linear segment to the path from the [lastPose] the the [endPose]. The heading will be
      * interpolated tangent to the direction of travel along the segment, meaning the robot will
      * always face the direction it is moving in.
      */
-    fun lineToTangentHeading(endPose: Pose): PedroPathingActionBuilder {
-        builder.addPath(BezierLine(lastPose, endPose))
-        builder.setTangentHeadingInterpolation()
-        lastPose = endPose
-        return this
-    }
+    fun lineToTangentHeading(endPose: Pose): PedroPathingActionBuilder =
+        segment("lineToTangentHeading", endPose, emptyArray()) { startPose ->
+            addPath(BezierLine(startPose, endPose))
+            setTangentHeadingInterpolation()
+        }
 
     /**
      * Adds a bézier curve segment to the path defined by the [lastPose], [controlPoses], and the
      * [endPose]. The heading will be interpolated linearly between the start and end poses.
      */
-    fun splineTo(endPose: Pose, vararg controlPoses: Pose): PedroPathingActionBuilder {
-        builder.addPath(BezierCurve(lastPose, *controlPoses, endPose))
-        builder.setLinearHeadingInterpolation(lastPose.heading, endPose.heading)
-        lastPose = endPose
-        return this
-    }
+    fun splineTo(endPose: Pose, vararg controlPoses: Pose): PedroPathingActionBuilder =
+        segment("splineTo", endPose, controlPoses) { startPose ->
+            addPath(BezierCurve(startPose, *controlPoses, endPose))
+            setLinearHeadingInterpolation(startPose.heading, endPose.heading)
+        }
 
     /**
      * Adds a bézier curve to the path defined by the [lastPose], [controlPoses], and the [endPose].
@@ -73,12 +101,11 @@ class PedroPathingActionBuilder(private val follower: Follower, startPose: Pose)
     fun splineToConstantHeading(
         endPose: Pose,
         vararg controlPoses: Pose,
-    ): PedroPathingActionBuilder {
-        builder.addPath(BezierCurve(lastPose, *controlPoses, endPose))
-        builder.setConstantHeadingInterpolation(lastPose.heading)
-        lastPose = endPose
-        return this
-    }
+    ): PedroPathingActionBuilder =
+        segment("splineToConstantHeading", endPose, controlPoses) { startPose ->
+            addPath(BezierCurve(startPose, *controlPoses, endPose))
+            setConstantHeadingInterpolation(startPose.heading)
+        }
 
     /**
      * Adds a bézier curve to the path defined by the [lastPose], [controlPoses], and the [endPose].
@@ -88,16 +115,35 @@ class PedroPathingActionBuilder(private val follower: Follower, startPose: Pose)
     fun splineToTangentHeading(
         endPose: Pose,
         vararg controlPoses: Pose,
-    ): PedroPathingActionBuilder {
-        builder.addPath(BezierCurve(lastPose, *controlPoses, endPose))
-        builder.setTangentHeadingInterpolation()
-        lastPose = endPose
-        return this
+    ): PedroPathingActionBuilder =
+        segment("splineToTangentHeading", endPose, controlPoses) { startPose ->
+            addPath(BezierCurve(startPose, *controlPoses, endPose))
+            setTangentHeadingInterpolation()
+        }
+
+    /**
+     * Builds the segments into a chain, or gets it from the [cache] if the same segments were
+     * built before.
+     *
+     * @return the chain
+     */
+    fun buildPathChain(): PathChain {
+        val buildChain = {
+            val builder = follower.pathBuilder()
+            for (addSegment in segments) builder.addSegment()
+            builder.build()
+        }
+        return cache?.getOrBuild(key.toList(), buildChain) ?: buildChain()
     }
 
-    internal fun build(): Action = Action {
-        if (!follower.isBusy) follower.followPath(builder.build(), true)
-        follower.update()
-        follower.isBusy
+    internal fun build(): Action {
+        var chain: PathChain? = null
+        return Action {
+            if (!follower.isBusy) {
+                follower.followPath(chain ?: buildPathChain().also { chain = it }, true)
+            }
+            updateFollower()
+            follower.isBusy
+        }
     }
 }
@@ -0,0 +1,107 @@
+package dev.kingssack.volt.integrations.rr
+
+import com.acmerobotics.roadrunner.Pose2d
+import kotlin.math.PI
+import kotlin.math.abs
+import kotlin.math.cos
+import kotlin.math.hypot
+import kotlin.math.sin
+
+/**
+ * Corrects odometry with absolute pose measurements, such as AprilTag localization.
+ *
+ * A measurement describes where the robot was when its camera frame was taken, which is already
+ * in the past once it is processed. It is compared with the odometry pose in [history] at that
+ * time, and the difference is carried forward to the current pose as a rigid transform, so the
+ * motion since the frame is kept. Only [gain] of the difference is corrected per measurement,
+ * which filters out noise like a complementary filter. The whole history is moved as well, so
+ * later measurements are compared against corrected poses.
+ *
+ * @param history the odometry poses measurements are compared with
+ * @property gain the fraction of each measurement's error that is corrected, from 0 to 1
+ * @property maxTranslationError the furthest in inches a measurement may be from odometry
+ * @property maxHeadingError the most in radians a measurement's heading may differ from odometry
+ */
+class PoseCorrector(
+    private val history: PoseHistory,
+    var gain: Double = 0.2,
+    var maxTranslationError: Double = 24.0,
+    var maxHeadingError: Double = PI / 6,
+) {
+    /** How many measurements were used. */
+    var accepted = 0L
+        private set
+
+    /** How many measurements were outside the history or too far from odometry. */
+    var rejected = 0L
+        private set
+
+    /**
+     * Corrects [current] with [measured], the robot's pose at [timestampNs].
+     *
+     * @return the corrected pose, or null if the measurement was rejected
+     */
+    fun correct(current: Pose2d, measured: Pose2d, timestampNs: Long): Pose2d? {
+        val index = history.indexAt(timestampNs)
+        if (index < 0) {
+            rejected++
+            return null
+        }
+        // Frames newer than the last recorded pose are compared with it
+        val historical = history.poseAt(timestampNs) ?: history.pose(index)
+
+        val hx = historical.position.x
+        val hy = historical.position.y
+        val rotation = wrap(measured.heading.toDouble() - historical.heading.toDouble())
+        if (
+            hypot(measured.position.x - hx, measured.position.y - hy) > maxTranslationError ||
+                abs(rotation) > maxHeadingError
+        ) {
+            rejected++
+            return null
+        }
+
+        // The transform taking the historical pose to the measured one
+        val fullCos = cos(rotation)
+        val fullSin = sin(rotation)
+        val tx = measured.position.x - (fullCos * hx - fullSin * hy)
+        val ty = measured.position.y - (fullSin * hx + fullCos * hy)
+
+        // Take part of it, turning about the same center
+        val partial = rotation * gain
+        val dx: Double
+        val dy: Double
+        if (abs(rotation) < 1e-6) {
+            dx = tx * gain
+            dy = ty * gain
+        } else {
+            val a = 1.0 - fullCos
+            val det = 2.0 * a
+            val cx = (a * tx - fullSin * ty) / det
+            val cy = (fullSin * tx + a * ty) / det
+            val cos = cos(partial)
+            val sin = sin(partial)
+            dx = cx - (cos * cx - sin * cy)
+            dy = cy - (sin * cx + cos * cy)
+        }
+
+        history.transform(dx, dy, partial)
+        accepted++
+
+        val cos = cos(partial)
+        val sin = sin(partial)
+        val x = current.position.x
+        val y = current.position.y
+        return Pose2d(
+            cos * x - sin * y + dx,
+            sin * x + cos * y + dy,
+            current.heading.toDouble() + partial,
+        )
+    }
+
+    private fun wrap(angle: Double): Double {
+        var a = angle % (2 * PI)
+        if (a > PI) a -= 2 * PI else if (a < -PI) a += 2 * PI
+        return a
+    }
+}
@@ -0,0 +1,173 @@
+package dev.kingssack.volt.integrations.rr
+
+import com.acmerobotics.dashboard.canvas.Canvas
+import com.acmerobotics.roadrunner.Pose2d
+import java.lang.System.nanoTime
+import kotlin.math.PI
+import kotlin.math.cos
+import kotlin.math.sin
+
+/**
+ * A fixed-size history of timestamped poses.
+ *
+ * Poses are stored in a ring of primitive arrays, so recording a pose does not allocate. The
+ * oldest pose is overwritten once [capacity] poses have been recorded. Indices run from the oldest
+ * pose at 0 to the newest at [size] - 1.
+ *
+ * The history must only be used from one thread.
+ *
+ * @property capacity the most poses kept
+ */
+class PoseHistory(val capacity: Int = 100) {
+    private val xs = DoubleArray(capacity)
+    private val ys = DoubleArray(capacity)
+    private val headings = DoubleArray(capacity)
+    private val timestamps = LongArray(capacity)
+    private var start = 0
+
+    init {
+        require(capacity > 0) { "Capacity must be positive, got $capacity" }
+    }
+
+    /** How many poses are stored. */
+    var size = 0
+        private set
+
+    /** Records [pose], taken at [timestampNs]. */
+    fun add(pose: Pose2d, timestampNs: Long = nanoTime()) =
+        add(pose.position.x, pose.position.y, pose.heading.toDouble(), timestampNs)
+
+    /** Records a pose at ([x], [y]) facing [heading] radians, taken at [timestampNs]. */
+    fun add(x: Double, y: Double, heading: Double, timestampNs: Long = nanoTime()) {
+        val i: Int
+        if (size < capacity) {
+            i = slot(size)
+            size++
+        } else {
+            i = start
+            start = slot(1)
+        }
+        xs[i] = x
+        ys[i] = y
+        headings[i] = heading
+        timestamps[i] = timestampNs
+    }
+
+    /** Removes every pose. */
+    fun clear() {
+        start = 0
+        size = 0
+    }
+
+    /** The x position of the pose at [index]. */
+    fun x(index: Int): Double = xs[slot(checked(index))]
+
+    /** The y position of the pose at [index]. */
+    fun y(index: Int): Double = ys[slot(checked(index))]
+
+    /** The heading in radians of the pose at [index]. */
+    fun heading(index: Int): Double = headings[slot(checked(index))]
+
+    /** The [System.nanoTime] the pose at [index] was taken at. */
+    fun timestampNs(index: Int): Long = timestamps[slot(checked(index))]
+
+    /** Gets the pose at [index]. */
+    fun pose(index: Int): Pose2d {
+        val i = slot(checked(index))
+        return Pose2d(xs[i], ys[i], headings[i])
+    }
+
+    /**
+     * Finds the newest pose taken at or before [timestampNs].
+     *
+     * @return its index, or -1 if every pose is newer
+     */
+    fun indexAt(timestampNs: Long): Int {
+        var low = 0
+        var high = size - 1
+        var found = -1
+        while (low <= high) {
+            val mid = (low + high) ushr 1
+            if (timestamps[slot(mid)] <= timestampNs) {
+                found = mid
+                low = mid + 1
+            } else {
+                high = mid - 1
+            }
+        }
+        return found
+    }
+
+    /**
+     * Estimates the pose at [timestampNs] by interpolating between the poses around it.
+     *
+     * @return the pose, or null if [timestampNs] is outside the history
+     */
+    fun poseAt(timestampNs: Long): Pose2d? {
+        val before = indexAt(timestampNs)
+        if (before < 0) return null
+        val a = slot(before)
+        if (timestamps[a] == timestampNs) return Pose2d(xs[a], ys[a], headings[a])
+        if (before == size - 1) return null
+
+        val b = slot(before + 1)
+        val f = (timestampNs - timestamps[a]).toDouble() / (timestamps[b] - timestamps[a])
+        return Pose2d(
+            xs[a] + (xs[b] - xs[a]) * f,
+            ys[a] + (ys[b] - ys[a]) * f,
+            headings[a] + wrap(headings[b] - headings[a]) * f,
+        )
+    }
+
+    /**
+     * Moves every pose by a rigid transform: rotated by [rotation] radians about the origin, then
+     * translated by ([dx], [dy]).
+     */
+    fun transform(dx: Double, dy: Double, rotation: Double) {
+        val cos = cos(rotation)
+        val sin = sin(rotation)
+        for (index in 0 until size) {
+            val i = slot(index)
+            val x = xs[i]
+            xs[i] = cos * x - sin * ys[i] + dx
+            ys[i] = sin * x + cos * ys[i] + dy
+            headings[i] += rotation
+        }
+    }
+
+    /**
+     * Strokes the path through every pose, oldest first.
+     *
+     * Canvas keeps the arrays it is given until its packet is serialized, which may happen on
+     * another thread after later ticks, so every call copies the poses into new arrays.
+     */
+    fun strokePolyline(c: Canvas) {
+        val xPoints = DoubleArray(size)
+        val yPoints = DoubleArray(size)
+
+        // Copy the ring in at most two runs so the points are in order
+        val firstRun = minOf(size, capacity - start)
+        xs.copyInto(xPoints, 0, start, start + firstRun)
+        ys.copyInto(yPoints, 0, start, start + firstRun)
+        xs.copyInto(xPoints, firstRun, 0, size - firstRun)
+        ys.copyInto(yPoints, firstRun, 0, size - firstRun)
+
+        c.strokePolyline(xPoints, yPoints)
+    }
+
+    private fun slot(index: Int): Int {
+        val i = start + index
+        return if (i >= capacity) i - capacity else i
+    }
+
+    private fun checked(index: Int): Int {
+        if (index !in 0 until size) throw IndexOutOfBoundsException("Index $index, size $size")
+        return index
+    }
+
+    private fun wrap(angle: Double): Double {
+        var a = angle % (2 * PI)
+        if (a > PI) a -= 2 * PI else if (a < -PI) a += 2 * PI
+        return a
+    }
+}
@@ -1,6 +1,8 @@
 package dev.kingssack.volt.integrations.rr.localizer
 
-import com.acmerobotics.roadrunner.*
+import com.acmerobotics.roadrunner.MecanumKinematics
+import com.acmerobotics.roadrunner.Pose2d
+import com.acmerobotics.roadrunner.PoseVelocity2d
 import com.acmerobotics.roadrunner.ftc.Encoder
 import com.acmerobotics.roadrunner.ftc.OverflowEncoder
 import com.acmerobotics.roadrunner.ftc.RawEncoder
@@ -32,18 +34,26 @@ class MecanumDriveLocalizer(
     private val kinematics: MecanumKinematics,
     val imu: IMU,
     private val inPerTick: Double,
-    override var pose: Pose2d,
+    pose: Pose2d,
 ) : RoadRunnerLocalizer {
     val leftFrontEncoder: Encoder = OverflowEncoder(RawEncoder(leftFront))
     val leftBackEncoder: Encoder = OverflowEncoder(RawEncoder(leftBack))
     val rightBackEncoder: Encoder = OverflowEncoder(RawEncoder(rightBack))
     val rightFrontEncoder: Encoder = OverflowEncoder(RawEncoder(rightFront))
 
+    private val state = PoseIntegrator(pose)
+
+    override var pose: Pose2d
+        get() = state.pose
+        set(value) {
+            state.pose = value
+        }
+
     private var lastLeftFrontPos = 0.0
     private var lastLeftBackPos = 0.0
     private var lastRightBackPos = 0.0
     private var lastRightFrontPos = 0.0
-    private var lastHeading = Rotation2d(0.0, 0.0)
+    private var lastHeading = 0.0
 
     private var initialized = false
 
@@ -55,7 +65,7 @@ class MecanumDriveLocalizer(
 
         val angles = imu.robotYawPitchRollAngles
 
-        val heading = Rotation2d.exp(angles.getYaw(AngleUnit.RADIANS))
+        val heading = angles.getYaw(AngleUnit.RADIANS)
 
         if (!initialized) {
             initialized = true
@@ -67,43 +77,18 @@ class MecanumDriveLocalizer(
 
             lastHeading = heading
 
-            return PoseVelocity2d(Vector2d(0.0, 0.0), 0.0)
+            return state.velocity
         }
 
-        val headingDelta = heading.minus(lastHeading)
-        val twist =
-            kinematics.forward(
-                MecanumKinematics.WheelIncrements(
-                    DualNum<Time>(
-                            doubleArrayOf(
-                                leftFrontPosVel.position - lastLeftFrontPos,
-                                leftFrontPosVel.velocity!!.toDouble(),
-                            )
-                        )
-                        .times(inPerTick),
-                    DualNum<Time>(
-                            doubleArrayOf(
-                                leftBackPosVel.position - lastLeftBackPos,
-                                leftBackPosVel.velocity!!.toDouble(),
-                            )
-                        )
-                        .times(inPerTick),
-                    DualNum<Time>(
-                            doubleArrayOf(
-                                rightBackPosVel.position - lastRightBackPos,
-                                rightBackPosVel.velocity!!.toDouble(),
-                            )
-                        )
-                        .times(inPerTick),
-                    DualNum<Time>(
-                            doubleArrayOf(
-                                rightFrontPosVel.position - lastRightFrontPos,
-                                rightFrontPosVel.velocity!!.toDouble(),
-                            )
-                        )
-                        .times(inPerTick),
-                )
-            )
+        val headingDelta = PoseIntegrator.angleDelta(heading, lastHeading)
+        val leftFrontDelta = (leftFrontPosVel.position - lastLeftFrontPos) * inPerTick
+        val leftBackDelta = (leftBackPosVel.position - lastLeftBackPos) * inPerTick
+        val rightBackDelta = (rightBackPosVel.position - lastRightBackPos) * inPerTick
+        val rightFrontDelta = (rightFrontPosVel.position - lastRightFrontPos) * inPerTick
+        val leftFrontVel = leftFrontPosVel.velocity!! * inPerTick
+        val leftBackVel = leftBackPosVel.velocity!! * inPerTick
+        val rightBackVel = rightBackPosVel.velocity!! * inPerTick
+        val rightFrontVel = rightFrontPosVel.velocity!! * inPerTick
 
         lastLeftFrontPos = leftFrontPosVel.position.toDouble()
         lastLeftBackPos = leftBackPosVel.position.toDouble()
@@ -112,8 +97,20 @@ class MecanumDriveLocalizer(
 
         lastHeading = heading
 
-        pose = pose.plus(Twist2d(twist.line.value(), headingDelta))
-
-        return twist.velocity().value()
+        // MecanumKinematics.forward, expanded so no dual numbers are built
+        val lateralScale = 0.25 / kinematics.lateralMultiplier
+        val angularScale = 0.25 / kinematics.trackWidth
+        state.integrate(
+            (leftFrontDelta + leftBackDelta + rightBackDelta + rightFrontDelta) * 0.25,
+            (-leftFrontDelta + leftBackDelta - rightBackDelta + rightFrontDelta) * lateralScale,
+            headingDelta,
+        )
+        state.setVelocity(
+            (leftFrontVel + leftBackVel + rightBackVel + rightFrontVel) * 0.25,
+            (-leftFrontVel + leftBackVel - rightBackVel + rightFrontVel) * lateralScale,
+            (-leftFrontVel - leftBackVel + rightBackVel + rightFrontVel) * angularScale,
+        )
+
+        return state.velocity
     }
 }
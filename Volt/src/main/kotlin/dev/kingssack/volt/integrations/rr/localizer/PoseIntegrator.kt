@@ -0,0 +1,122 @@
+package dev.kingssack.volt.integrations.rr.localizer
+
+import com.acmerobotics.roadrunner.Pose2d
+import com.acmerobotics.roadrunner.PoseVelocity2d
+import com.acmerobotics.roadrunner.Rotation2d
+import com.acmerobotics.roadrunner.Vector2d
+import kotlin.math.PI
+import kotlin.math.abs
+import kotlin.math.atan2
+import kotlin.math.cos
+import kotlin.math.sin
+
+/**
+ * The pose and velocity of a localizer, integrated in place from robot-relative twists.
+ *
+ * Odometry runs at least once per tick, so the estimate is kept in primitive fields rather than
+ * rebuilt from RoadRunner's immutable types on every update. [pose] and [velocity] are built only
+ * when read, and at most once per update.
+ *
+ * @param pose the initial pose
+ * @property x the x position in inches
+ * @property y the y position in inches
+ * @property velX the robot-relative forward velocity in inches per second
+ * @property velY the robot-relative lateral velocity in inches per second
+ * @property velHeading the angular velocity in radians per second
+ */
+class PoseIntegrator(pose: Pose2d) {
+    var x = pose.position.x
+        private set
+
+    var y = pose.position.y
+        private set
+
+    // The heading is kept as a unit complex number, like Rotation2d, so integrating needs no atan2
+    private var real = pose.heading.real
+    private var imag = pose.heading.imag
+
+    var velX = 0.0
+        private set
+
+    var velY = 0.0
+        private set
+
+    var velHeading = 0.0
+        private set
+
+    private var poseSnapshot: Pose2d? = pose
+    private var velocitySnapshot: PoseVelocity2d? = null
+
+    /** The heading in radians. */
+    val heading: Double
+        get() = atan2(imag, real)
+
+    /** The pose. Setting it moves the estimate without changing the velocity. */
+    var pose: Pose2d
+        get() =
+            poseSnapshot
+                ?: Pose2d(Vector2d(x, y), Rotation2d(real, imag)).also { poseSnapshot = it }
+        set(value) {
+            x = value.position.x
+            y = value.position.y
+            real = value.heading.real
+            imag = value.heading.imag
+            poseSnapshot = value
+        }
+
+    /** The robot-relative velocity. */
+    val velocity: PoseVelocity2d
+        get() =
+            velocitySnapshot
+                ?: PoseVelocity2d(Vector2d(velX, velY), velHeading).also { velocitySnapshot = it }
+
+    /**
+     * Moves the pose along a robot-relative twist, like [Pose2d.plus].
+     *
+     * @param dx the forward displacement in inches
+     * @param dy the lateral displacement in inches
+     * @param dHeading the change in heading in radians
+     */
+    fun integrate(dx: Double, dy: Double, dHeading: Double) {
+        val cosH = cos(dHeading)
+        val sinH = sin(dHeading)
+
+        // Integrate along the arc, using the series expansion when it is nearly straight
+        val s: Double
+        val c: Double
+        if (abs(dHeading) < 1e-6) {
+            s = 1.0 - dHeading * dHeading / 6.0
+            c = dHeading / 2.0
+        } else {
+            s = sinH / dHeading
+            c = (1.0 - cosH) / dHeading
+        }
+        val tx = s * dx - c * dy
+        val ty = c * dx + s * dy
+
+        x += real * tx - imag * ty
+        y += imag * tx + real * ty
+        val newReal = real * cosH - imag * sinH
+        imag = real * sinH + imag * cosH
+        real = newReal
+        poseSnapshot = null
+    }
+
+    /** Sets the robot-relative velocity. */
+    fun setVelocity(velX: Double, velY: Double, velHeading: Double) {
+        if (velX == this.velX && velY == this.velY && velHeading == this.velHeading) return
+        this.velX = velX
+        this.velY = velY
+        this.velHeading = velHeading
+        velocitySnapshot = null
+    }
+
+    companion object {
+        /** The smallest signed angle in radians that turns [from] to [to]. */
+        fun angleDelta(to: Double, from: Double): Double {
+            var delta = (to - from) % (2 * PI)
+            if (delta > PI) delta -= 2 * PI else if (delta < -PI) delta += 2 * PI
+            return delta
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package dev.kingssack.volt.integrations.rr.localizer
+
+import com.acmerobotics.roadrunner.Pose2d
+import com.acmerobotics.roadrunner.PoseVelocity2d
+import com.acmerobotics.roadrunner.Vector2d
+import com.qualcomm.hardware.lynx.LynxModule
+import dev.kingssack.volt.robot.BulkCache
+import dev.kingssack.volt.util.VoltLogs
+import java.lang.System.nanoTime
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+
+/**
+ * Runs a [RoadRunnerLocalizer] on its own thread at a fixed rate.
+ *
+ * Odometry integrated on the OpMode thread runs at whatever rate the rest of the loop allows, and
+ * its time step jitters with telemetry and sensor reads. Here [localizer] is updated at [rateHz]
+ * regardless, and every update is published as one immutable [Snapshot]. Reading [pose] or
+ * calling [update] only reads the latest snapshot, so it never blocks or touches hardware.
+ *
+ * A robot's hubs are in manual bulk caching mode, so they only read new encoder values once their
+ * cache is cleared. Every update reads through [bulkCache], which takes a fresh bulk read of [hubs]
+ * first, so each update integrates new encoder values whether or not a tick is running. Each bulk
+ * read is a round trip on its hub's bus, so [hubs] should only hold the hubs the encoders are on.
+ * The thread starts on the first [update] and stops by itself once [update] has not been called
+ * for a second, so it never outlives the OpMode.
+ *
+ * [localizer] must not be used directly while the thread runs.
+ *
+ * @param localizer the localizer to run
+ * @param rateHz how often [localizer] is updated
+ * @param bulkCache the bulk cache of the hubs [localizer] reads encoders through, or null if they
+ *   are not bulk cached
+ * @param hubs the hubs [localizer] reads encoders from, by default every hub of [bulkCache]
+ */
+class ThreadedLocalizer(
+    val localizer: RoadRunnerLocalizer,
+    rateHz: Double = 200.0,
+    private val bulkCache: BulkCache? = null,
+    private val hubs: List<LynxModule> = bulkCache?.hubs.orEmpty(),
+) : RoadRunnerLocalizer {
+    /**
+     * A pose estimate published by the localization thread.
+     *
+     * @property pose the pose
+     * @property velocity the robot-relative velocity
+     * @property timestampNs the [System.nanoTime] the estimate was made at
+     */
+    class Snapshot(val pose: Pose2d, val velocity: PoseVelocity2d, val timestampNs: Long)
+
+    private val periodNs = (1e9 / rateHz).toLong()
+
+    @Volatile private var lastReadNs = 0L
+    private var executor: ScheduledExecutorService? = null
+
+    init {
+        require(rateHz > 0.0) { "Rate must be positive, got $rateHz" }
+    }
+
+    /** The latest estimate. */
+    @Volatile
+    var snapshot = Snapshot(localizer.pose, PoseVelocity2d(Vector2d(0.0, 0.0), 0.0), nanoTime())
+        private set
+
+    /** How many times [localizer] has been updated. */
+    @Volatile
+    var updates = 0L
+        private set
+
+    /** The latest pose. Setting it waits for an update in progress to finish. */
+    override var pose: Pose2d
+        get() = snapshot.pose
+        set(value) {
+            synchronized(localizer) {
+                localizer.pose = value
+                snapshot = Snapshot(value, snapshot.velocity, nanoTime())
+            }
+        }
+
+    /** Gets the latest velocity, starting the thread if it is not running. */
+    override fun update(): PoseVelocity2d {
+        lastReadNs = nanoTime()
+        ensureRunning()
+        return snapshot.velocity
+    }
+
+    /**
+     * Stops the thread, waiting for an update in progress to finish so no hardware is read after
+     * it returns. It starts again on the next [update].
+     */
+    fun close() {
+        val executor = stop() ?: return
+        try {
+            executor.awaitTermination(CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+        } catch (_: InterruptedException) {
+            Thread.currentThread().interrupt()
+        }
+    }
+
+    @Synchronized
+    private fun stop(): ScheduledExecutorService? {
+        val executor = executor ?: return null
+        executor.shutdownNow()
+        this.executor = null
+        return executor
+    }
+
+    @Synchronized
+    private fun ensureRunning() {
+        if (executor != null) return
+        executor =
+            Executors.newSingleThreadScheduledExecutor {
+                    Thread(it, "Volt localizer").apply {
+                        isDaemon = true
+                        priority = Thread.MAX_PRIORITY
+                    }
+                }
+                .also { it.scheduleAtFixedRate(::run, 0L, periodNs, TimeUnit.NANOSECONDS) }
+    }
+
+    private fun run() {
+        if (nanoTime() - lastReadNs > IDLE_NS) {
+            stop()
+            return
+        }
+
+        // An exception would cancel every later update, so it is only logged
+        try {
+            synchronized(localizer) {
+                val velocity = bulkCache?.read(hubs, localizer::update) ?: localizer.update()
+                snapshot = Snapshot(localizer.pose, velocity, nanoTime())
+                updates++
+            }
+        } catch (e: Exception) {
+            VoltLogs.log("Error updating localizer: ${e.message.toString()}")
+        }
+    }
+
+    private companion object {
+        const val IDLE_NS = 1_000_000_000L
+        const val CLOSE_TIMEOUT_MS = 100L
+    }
+}
@@ -1,6 +1,7 @@
 package dev.kingssack.volt.integrations.rr.localizer
 
-import com.acmerobotics.roadrunner.*
+import com.acmerobotics.roadrunner.Pose2d
+import com.acmerobotics.roadrunner.PoseVelocity2d
 import com.acmerobotics.roadrunner.ftc.Encoder
 import com.acmerobotics.roadrunner.ftc.OverflowEncoder
 import com.acmerobotics.roadrunner.ftc.RawEncoder
@@ -22,7 +23,7 @@ import com.qualcomm.robotcore.hardware.HardwareMap
 class ThreeDeadWheelLocalizer(
     hardwareMap: HardwareMap,
     private val inPerTick: Double,
-    override var pose: Pose2d,
+    pose: Pose2d,
     private val params: LocalizerParams = LocalizerParams(),
 ) : RoadRunnerLocalizer {
     /**
@@ -75,6 +76,16 @@ class ThreeDeadWheelLocalizer(
             )
         )
 
+    private val state = PoseIntegrator(pose)
+
+    override var pose: Pose2d
+        get() = state.pose
+        set(value) {
+            state.pose = value
+        }
+
+    private val trackTicks = params.par0YTicks - params.par1YTicks
+
     private var lastPar0Pos = 0
     private var lastPar1Pos = 0
     private var lastPerpPos = 0
@@ -92,53 +103,33 @@ class ThreeDeadWheelLocalizer(
             lastPar1Pos = par1PosVel.position
             lastPerpPos = perpPosVel.position
 
-            return PoseVelocity2d(Vector2d(0.0, 0.0), 0.0)
+            return state.velocity
         }
 
-        val par0PosDelta = par0PosVel.position - lastPar0Pos
-        val par1PosDelta = par1PosVel.position - lastPar1Pos
-        val perpPosDelta = perpPosVel.position - lastPerpPos
-
-        val twist =
-            Twist2dDual(
-                Vector2dDual(
-                    DualNum<Time>(
-                            doubleArrayOf(
-                                (params.par0YTicks * par1PosDelta -
-                                    params.par1YTicks * par0PosDelta) /
-                                    (params.par0YTicks - params.par1YTicks),
-                                (params.par0YTicks * par1PosVel.velocity!! -
-                                    params.par1YTicks * par0PosVel.velocity!!) /
-                                    (params.par0YTicks - params.par1YTicks),
-                            )
-                        )
-                        .times(inPerTick),
-                    DualNum<Time>(
-                            doubleArrayOf(
-                                (params.perpXTicks / (params.par0YTicks - params.par1YTicks) *
-                                    (par1PosDelta - par0PosDelta) + perpPosDelta),
-                                (params.perpXTicks / (params.par0YTicks - params.par1YTicks) *
-                                    (par1PosVel.velocity!! - par0PosVel.velocity!!) +
-                                    perpPosVel.velocity!!),
-                            )
-                        )
-                        .times(inPerTick),
-                ),
-                DualNum(
-                    doubleArrayOf(
-                        (par0PosDelta - par1PosDelta) / (params.par0YTicks - params.par1YTicks),
-                        (par0PosVel.velocity!! - par1PosVel.velocity!!) /
-                            (params.par0YTicks - params.par1YTicks),
-                    )
-                ),
-            )
+        val par0PosDelta = (par0PosVel.position - lastPar0Pos).toDouble()
+        val par1PosDelta = (par1PosVel.position - lastPar1Pos).toDouble()
+        val perpPosDelta = (perpPosVel.position - lastPerpPos).toDouble()
+        val par0Vel = par0PosVel.velocity!!.toDouble()
+        val par1Vel = par1PosVel.velocity!!.toDouble()
+        val perpVel = perpPosVel.velocity!!.toDouble()
 
         lastPar0Pos = par0PosVel.position
         lastPar1Pos = par1PosVel.position
         lastPerpPos = perpPosVel.position
 
-        pose = pose.plus(twist.value())
+        state.integrate(
+            (params.par0YTicks * par1PosDelta - params.par1YTicks * par0PosDelta) / trackTicks *
+                inPerTick,
+            (params.perpXTicks / trackTicks * (par1PosDelta - par0PosDelta) + perpPosDelta) *
+                inPerTick,
+            (par0PosDelta - par1PosDelta) / trackTicks,
+        )
+        state.setVelocity(
+            (params.par0YTicks * par1Vel - params.par1YTicks * par0Vel) / trackTicks * inPerTick,
+            (params.perpXTicks / trackTicks * (par1Vel - par0Vel) + perpVel) * inPerTick,
+            (par0Vel - par1Vel) / trackTicks,
+        )
 
-        return twist.velocity().value()
+        return state.velocity
     }
 }
@@ -1,7 +1,7 @@
 package dev.kingssack.volt.integrations.rr.localizer
 
-import com.acmerobotics.roadrunner.*
-import com.acmerobotics.roadrunner.Rotation2d.Companion.exp
+import com.acmerobotics.roadrunner.Pose2d
+import com.acmerobotics.roadrunner.PoseVelocity2d
 import com.acmerobotics.roadrunner.ftc.Encoder
 import com.acmerobotics.roadrunner.ftc.OverflowEncoder
 import com.acmerobotics.roadrunner.ftc.RawEncoder
@@ -10,8 +10,6 @@ import com.qualcomm.robotcore.hardware.DcMotorSimple
 import com.qualcomm.robotcore.hardware.HardwareMap
 import com.qualcomm.robotcore.hardware.IMU
 import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit
-import org.firstinspires.ftc.robotcore.external.navigation.AngularVelocity
-import org.firstinspires.ftc.robotcore.external.navigation.UnnormalizedAngleUnit
 import kotlin.math.abs
 import kotlin.math.sign
 
@@ -30,7 +28,7 @@ class TwoDeadWheelLocalizer(
     hardwareMap: HardwareMap,
     val imu: IMU,
     private val inPerTick: Double,
-    override var pose: Pose2d,
+    pose: Pose2d,
     private val params: LocalizerParams = LocalizerParams(),
 ) : RoadRunnerLocalizer {
     /**
@@ -69,9 +67,17 @@ class TwoDeadWheelLocalizer(
             )
         )
 
+    private val state = PoseIntegrator(pose)
+
+    override var pose: Pose2d
+        get() = state.pose
+        set(value) {
+            state.pose = value
+        }
+
     private var lastParPos = 0
     private var lastPerpPos = 0
-    private var lastHeading = Rotation2d(0.0, 0.0)
+    private var lastHeading = 0.0
 
     private var lastRawHeadingVel = 0.0
     private var headingVelOffset: Double = 0.0
@@ -85,19 +91,11 @@ class TwoDeadWheelLocalizer(
         // Use degrees here to work around
         // https://github.com/FIRST-Tech-Challenge/FtcRobotController/issues/1070
         val angularVelocityDegrees = imu.getRobotAngularVelocity(AngleUnit.DEGREES)
-        val angularVelocity =
-            AngularVelocity(
-                UnnormalizedAngleUnit.RADIANS,
-                Math.toRadians(angularVelocityDegrees.xRotationRate.toDouble()).toFloat(),
-                Math.toRadians(angularVelocityDegrees.yRotationRate.toDouble()).toFloat(),
-                Math.toRadians(angularVelocityDegrees.zRotationRate.toDouble()).toFloat(),
-                angularVelocityDegrees.acquisitionTime,
-            )
 
-        val heading = exp(angles.getYaw(AngleUnit.RADIANS))
+        val heading = angles.getYaw(AngleUnit.RADIANS)
 
         // see https://github.com/FIRST-Tech-Challenge/FtcRobotController/issues/617
-        val rawHeadingVel = angularVelocity.zRotationRate.toDouble()
+        val rawHeadingVel = Math.toRadians(angularVelocityDegrees.zRotationRate.toDouble())
         if (abs(rawHeadingVel - lastRawHeadingVel) > Math.PI) {
             headingVelOffset -= sign(rawHeadingVel) * 2 * Math.PI
         }
@@ -111,40 +109,28 @@ class TwoDeadWheelLocalizer(
             lastPerpPos = perpPosVel.position
             lastHeading = heading
 
-            return PoseVelocity2d(Vector2d(0.0, 0.0), 0.0)
+            return state.velocity
         }
 
-        val parPosDelta = parPosVel.position - lastParPos
-        val perpPosDelta = perpPosVel.position - lastPerpPos
-        val headingDelta = heading.minus(lastHeading)
-
-        val twist =
-            Twist2dDual(
-                Vector2dDual(
-                    DualNum<Time>(
-                            doubleArrayOf(
-                                parPosDelta - params.parYTicks * headingDelta,
-                                parPosVel.velocity!! - params.parYTicks * headingVel,
-                            )
-                        )
-                        .times(inPerTick),
-                    DualNum<Time>(
-                            doubleArrayOf(
-                                perpPosDelta - params.perpXTicks * headingDelta,
-                                perpPosVel.velocity!! - params.perpXTicks * headingVel,
-                            )
-                        )
-                        .times(inPerTick),
-                ),
-                DualNum(doubleArrayOf(headingDelta, headingVel)),
-            )
+        val parPosDelta = (parPosVel.position - lastParPos).toDouble()
+        val perpPosDelta = (perpPosVel.position - lastPerpPos).toDouble()
+        val headingDelta = PoseIntegrator.angleDelta(heading, lastHeading)
 
         lastParPos = parPosVel.position
         lastPerpPos = perpPosVel.position
         lastHeading = heading
 
-        pose = pose.plus(twist.value())
+        state.integrate(
+            (parPosDelta - params.parYTicks * headingDelta) * inPerTick,
+            (perpPosDelta - params.perpXTicks * headingDelta) * inPerTick,
+            headingDelta,
+        )
+        state.setVelocity(
+            (parPosVel.velocity!! - params.parYTicks * headingVel) * inPerTick,
+            (perpPosVel.velocity!! - params.perpXTicks * headingVel) * inPerTick,
+            headingVel,
+        )
 
-        return twist.velocity().value()
+        return state.velocity
     }
 }
@@ -10,6 +10,8 @@ import dev.frozenmilk.sinister.sdk.opmodes.OpModeScanner.RegistrationHelper
 import dev.frozenmilk.sinister.targeting.NarrowSearch
 import dev.kingssack.volt.robot.Robot
 import dev.kingssack.volt.util.VoltLogs
+import dev.kingssack.volt.util.telemetry.CompetitionMode
+import dev.kingssack.volt.util.telemetry.OpModeTelemetry
 import org.firstinspires.ftc.robotcore.external.Telemetry
 import org.firstinspires.ftc.robotcore.internal.opmode.OpModeMeta
 import java.lang.reflect.Constructor
@@ -37,11 +39,17 @@ abstract class VoltOpMode<R : Robot> {
     open fun end() {}
 
     val hardwareMap: HardwareMap = OpModeInfoHolder.hardwareMap!!
-    val telemetry: Telemetry = OpModeInfoHolder.telemetry!!
+    val telemetry: Telemetry = OpModeTelemetry(OpModeInfoHolder.telemetry!!)
     val gamepad1: Gamepad = OpModeInfoHolder.gamepad1!!
     val gamepad2: Gamepad = OpModeInfoHolder.gamepad2!!
     val blackboard: MutableMap<String, Any> = OpModeInfoHolder.blackboard!!
 
+    init {
+        CompetitionMode.enabled =
+            javaClass.getAnnotation(VoltOpModeMeta::class.java)?.competition == true ||
+                blackboard[CompetitionMode.BLACKBOARD_KEY] == true
+    }
+
     fun opModeInInit() = OpModeInfoHolder.opModeInInit!!()
 
     fun opModeIsActive() = OpModeInfoHolder.isActiveFunction!!()
@@ -80,6 +88,7 @@ abstract class VoltOpMode<R : Robot> {
                     opMode.begin()
                 } finally {
                     opMode.end()
+                    opMode.robot.close()
                 }
             }
         }
@@ -1,5 +1,6 @@
 package dev.kingssack.volt.opmode
 
+import dev.kingssack.volt.util.telemetry.CompetitionMode
 import org.firstinspires.ftc.robotcore.internal.opmode.OpModeMeta
 
 /**
@@ -8,6 +9,7 @@ import org.firstinspires.ftc.robotcore.internal.opmode.OpModeMeta
  * @param name the name of the opmode
  * @param group the group of the opmode
  * @param autoTransition the pre selected teleop
+ * @param competition whether the opmode runs in [CompetitionMode]
  */
 @Target(AnnotationTarget.CLASS)
 @Retention(AnnotationRetention.RUNTIME)
@@ -15,4 +17,5 @@ annotation class VoltOpModeMeta(
     val name: String,
     val group: String = OpModeMeta.DefaultGroup,
     val autoTransition: String = "",
+    val competition: Boolean = false,
 )
@@ -10,7 +10,11 @@ import dev.kingssack.volt.opmode.VoltOpModeMeta
 import dev.kingssack.volt.robot.Robot
 import dev.kingssack.volt.util.Event
 import dev.kingssack.volt.util.Event.AutonomousEvent.When
+import dev.kingssack.volt.util.hardware.WriteFilter
 import dev.kingssack.volt.util.telemetry.ActionTracer
+import dev.kingssack.volt.util.telemetry.CompetitionMode
+import dev.kingssack.volt.util.telemetry.LoopProfiler
+import java.util.IdentityHashMap
 import org.firstinspires.ftc.robotcore.internal.opmode.OpModeMeta
 
 /**
@@ -76,14 +80,40 @@ abstract class AutonomousMode<R : Robot> : VoltOpMode<R>() {
                 else -> {}
             }
         }
-        while (opModeIsActive()) tick()
+        LoopProfiler.reset()
+        ActionTracer.reset()
+        WriteFilter.reset()
+        while (opModeIsActive()) {
+            LoopProfiler.beginTick()
+            robot.beginTick()
+            tick()
+            robot.endTick()
+            LoopProfiler.endTick()
+        }
     }
 
+    private val eventsPhase = LoopProfiler.phase("events")
+    private val actionsPhase = LoopProfiler.phase("actions")
+    private val robotPhase = LoopProfiler.phase("robot")
+
+    /**
+     * Ticks the autonomous mode: triggers events, steps every running action, updates the robot
+     * once, then publishes the tick's dashboard packet.
+     */
     open fun tick() {
-        processEvents()
-        processActions()
+        val competing = CompetitionMode.enabled
+        val packet = if (competing) unsentPacket else TelemetryPacket()
+        LoopProfiler.measure(eventsPhase) { processEvents() }
+        if (!competing) packet.fieldOverlay().operations.addAll(preview.operations)
+        LoopProfiler.measure(actionsPhase) { processActions(packet) }
+        LoopProfiler.measure(robotPhase) { context(telemetry) { robot.update() } }
+        if (competing) packet.fieldOverlay().operations.clear() else publish(packet)
     }
 
+    // Packets are never sent in competition mode, so actions share one and only its drawing is
+    // cleared between ticks
+    private val unsentPacket = TelemetryPacket()
+
     private fun processEvents() {
         events.removeIf { (event, action) ->
             when (event) {
@@ -103,22 +133,46 @@ abstract class AutonomousMode<R : Robot> : VoltOpMode<R>() {
             false
         }
     }
-    private val actions: MutableList<Pair<Action, Canvas>> = mutableListOf()
+
+    private val actions: MutableList<Action> = mutableListOf()
+
+    // Every running action's preview, composed when actions start or finish rather than per tick.
+    // Dashboard replaces the overlay with every packet, so it is still attached to each one.
+    // Nothing is drawn when packets are never sent
+    private val previewing: Boolean
+        get() = !CompetitionMode.enabled && dash != null
+
+    private val previews = IdentityHashMap<Action, Canvas>()
+    private val preview = Canvas()
+
     private fun startAction(action: Action) {
-        val canvas = Canvas()
-        action.preview(canvas)
-        actions.add(action to canvas)
+        actions.add(action)
+        if (!previewing) return
+        val canvas = Canvas().also(action::preview)
+        previews[action] = canvas
+        preview.operations.addAll(canvas.operations)
     }
-    private fun processActions() {
-        val packet = TelemetryPacket()
-        actions.removeIf { (action, canvas) ->
-            packet.fieldOverlay().operations.addAll(canvas.operations)
 
-            val running = action.run(packet)
+    private fun processActions(packet: TelemetryPacket) {
+        val finished =
+            // Actions are kept until they finish; run returns whether they are still running
+            actions.removeIf { action ->
+                val done = !action.run(packet)
+                if (done) previews.remove(action)
+                done
+            }
+        if (finished && previewing) {
+            preview.operations.clear()
+            for (action in actions) {
+                previews[action]?.let { preview.operations.addAll(it.operations) }
+            }
+        }
+    }
 
-            context(telemetry) { robot.update() }
-            context(packet) { ActionTracer.writePacket() }
-            running
+    private fun publish(packet: TelemetryPacket) {
+        context(packet) {
+            ActionTracer.writePacket()
+            LoopProfiler.writePacket()
         }
         dash?.sendTelemetryPacket(packet)
     }
@@ -4,7 +4,6 @@ import com.acmerobotics.roadrunner.PoseVelocity2d
 import com.acmerobotics.roadrunner.Vector2d
 import dev.kingssack.volt.attachment.drivetrain.Drivetrain
 import dev.kingssack.volt.robot.DrivetrainRobot
-import dev.kingssack.volt.util.Event.ManualEvent.Change
 import dev.kingssack.volt.util.Event.ManualEvent.Tap
 import dev.kingssack.volt.util.buttons.AnalogInput
 import dev.kingssack.volt.util.buttons.Button
@@ -69,7 +68,7 @@ abstract class DrivetrainControlsManualMode<T : Drivetrain, R : DrivetrainRobot<
 
     init {
         // Speed mode controls
-        Tap(Button.Y1) then
+        Tap(Button.Y1) thenReuse
             {
                 instant {
                     currentSpeedMode = SpeedMode.TURBO
@@ -81,7 +80,7 @@ abstract class DrivetrainControlsManualMode<T : Drivetrain, R : DrivetrainRobot<
                     gamepad1.setLedColor(255.0, 0.0, 0.0, 300)
                 }
             }
-        Tap(Button.B1) then
+        Tap(Button.B1) thenReuse
             {
                 instant {
                     currentSpeedMode = SpeedMode.NORMAL
@@ -93,7 +92,7 @@ abstract class DrivetrainControlsManualMode<T : Drivetrain, R : DrivetrainRobot<
                     gamepad1.setLedColor(0.0, 0.0, 255.0, 300)
                 }
             }
-        Tap(Button.A1) then
+        Tap(Button.A1) thenReuse
             {
                 instant {
                     currentSpeedMode = SpeedMode.PRECISE
@@ -105,7 +104,7 @@ abstract class DrivetrainControlsManualMode<T : Drivetrain, R : DrivetrainRobot<
                     gamepad1.setLedColor(0.0, 255.0, 0.0, 300)
                 }
             }
-        Tap(Button.X1) then
+        Tap(Button.X1) thenReuse
             {
                 instant {
                     currentSpeedMode = SpeedMode.SLOW
@@ -115,12 +114,9 @@ abstract class DrivetrainControlsManualMode<T : Drivetrain, R : DrivetrainRobot<
             }
 
         // Movement controls
-        Change(AnalogInput.LEFT_STICK_X1) then { value -> instant { x = -value.toDouble() } }
-        Change(AnalogInput.LEFT_STICK_Y1) then { value -> instant { y = -value.toDouble() } }
-        Change(AnalogInput.RIGHT_STICK_X1) then
-            { value ->
-                instant { rx = -value * params.turnScale }
-            }
+        channel(AnalogInput.LEFT_STICK_X1) { x = -it.toDouble() }
+        channel(AnalogInput.LEFT_STICK_Y1) { y = -it.toDouble() }
+        channel(AnalogInput.RIGHT_STICK_X1) { rx = -it * params.turnScale }
     }
 
     /**
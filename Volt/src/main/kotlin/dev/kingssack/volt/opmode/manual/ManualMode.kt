@@ -1,18 +1,28 @@
 package dev.kingssack.volt.opmode.manual
 
 import com.acmerobotics.dashboard.FtcDashboard
+import com.acmerobotics.dashboard.canvas.Canvas
 import com.acmerobotics.dashboard.telemetry.TelemetryPacket
 import com.acmerobotics.roadrunner.Action
+import dev.kingssack.volt.core.RearmableAction
 import dev.kingssack.volt.core.VoltActionBuilder
+import dev.kingssack.volt.core.isRearmable
 import dev.kingssack.volt.opmode.VoltOpMode
 import dev.kingssack.volt.opmode.VoltOpModeMeta
 import dev.kingssack.volt.robot.Robot
 import dev.kingssack.volt.util.Event
+import dev.kingssack.volt.util.TickClock
 import dev.kingssack.volt.util.buttons.AnalogHandler
 import dev.kingssack.volt.util.buttons.AnalogInput
+import dev.kingssack.volt.util.buttons.AnalogSink
 import dev.kingssack.volt.util.buttons.Button
 import dev.kingssack.volt.util.buttons.ButtonHandler
+import dev.kingssack.volt.util.buttons.readAnalogInputs
+import dev.kingssack.volt.util.buttons.readButtons
+import dev.kingssack.volt.util.hardware.WriteFilter
 import dev.kingssack.volt.util.telemetry.ActionTracer
+import dev.kingssack.volt.util.telemetry.CompetitionMode
+import dev.kingssack.volt.util.telemetry.LoopProfiler
 import java.util.*
 import org.firstinspires.ftc.robotcore.internal.opmode.OpModeMeta
 
@@ -52,134 +62,367 @@ abstract class ManualMode<R : Robot>(private val params: ManualParams = ManualPa
      *
      * @property deadzone the minimum joystick input to register
      * @property inputExp the input exponential for fine control
+     * @property dashboardRateHz how often telemetry packets are sent to the dashboard
      */
-    data class ManualParams(val deadzone: Float = 0.05f, val inputExp: Float = 2.0f)
+    data class ManualParams(
+        val deadzone: Float = 0.05f,
+        val inputExp: Float = 2.0f,
+        val dashboardRateHz: Double = 20.0,
+    )
 
-    private val buttonHandlers = EnumMap<Button, ButtonHandler>(Button::class.java)
-    private val analogHandlers = EnumMap<AnalogInput, AnalogHandler>(AnalogInput::class.java)
+    private val buttons = Button.entries
+    private val analogInputs = AnalogInput.entries
+
+    private val buttonHandler = ButtonHandler()
+    private val analogHandlers =
+        Array(analogInputs.size) { AnalogHandler(params.deadzone, params.inputExp) }
+    private val analogValues = FloatArray(analogInputs.size)
+    private val previousAnalogValues = FloatArray(analogInputs.size)
+
+    /** The time source for the current tick, sampled once before input is read. */
+    protected val clock = TickClock()
 
     private var runningActions = mutableListOf<Action>()
     private val dash: FtcDashboard? = FtcDashboard.getInstance()
 
+    // Every running action's preview, composed when actions start or finish rather than per tick.
+    // Nothing is drawn when packets are never sent
+    private val previewing: Boolean
+        get() = !CompetitionMode.enabled && dash != null
+
+    private val previews = IdentityHashMap<Action, Canvas>()
+    private val preview = Canvas()
+
+    // Packets collect every tick's data until they are sent, so only sent packets are allocated
+    private var packet = TelemetryPacket()
+    private val dashboardIntervalNs = (1e9 / params.dashboardRateHz).toLong()
+    private var lastDashboardNs = 0L
+
+    // Bindings are indexed by the ordinal of the input they listen to, so each tick only visits the
+    // bindings of inputs whose bit is set in the masks below.
     private val buttonBindings =
-        mutableListOf<Pair<Event.ManualEvent.ButtonEvent, VoltActionBuilder<R>.() -> Unit>>()
+        Array(buttons.size) {
+            mutableListOf<Pair<Event.ManualEvent.ButtonEvent, () -> Action>>()
+        }
 
     private val analogBindings =
-        mutableListOf<Pair<Event.ManualEvent.AnalogEvent, VoltActionBuilder<R>.(Float) -> Unit>>()
+        Array(analogInputs.size) {
+            mutableListOf<Pair<Event.ManualEvent.AnalogEvent, (Float) -> Action>>()
+        }
+
+    private val comboBindings = Array(buttons.size) { mutableListOf<ComboBinding>() }
 
-    private val comboBindings =
-        mutableListOf<Pair<Event.ManualEvent.Combo, VoltActionBuilder<R>.() -> Unit>>()
+    private val channels = Array(analogInputs.size) { mutableListOf<AnalogSink>() }
 
     private val instantButtons = EnumMap<Button, R.() -> Unit>(Button::class.java)
 
+    private var holdMask = 0L
+
+    private var pressedMask = 0L
+    private var tappedMask = 0L
+    private var releasedMask = 0L
+    private var doubleTappedMask = 0L
+    private var changedMask = 0
+
+    private class ComboBinding(val mask: Long, val source: () -> Action)
+
+    private fun bind(event: Event.ManualEvent.ButtonEvent, source: () -> Action) {
+        buttonBindings[event.button.ordinal].add(event to source)
+        if (event is Event.ManualEvent.Hold) holdMask = holdMask or (1L shl event.button.ordinal)
+    }
+
+    private fun bind(event: Event.ManualEvent.AnalogEvent, source: (Float) -> Action) {
+        analogBindings[event.analogInput.ordinal].add(event to source)
+    }
+
+    private fun bind(event: Event.ManualEvent.Combo, source: () -> Action) {
+        val binding =
+            ComboBinding(event.buttons.fold(0L) { mask, b -> mask or (1L shl b.ordinal) }, source)
+        event.buttons.forEach { comboBindings[it.ordinal].add(binding) }
+    }
+
     /** Maps an action to a button event */
     protected infix fun Event.ManualEvent.ButtonEvent.then(block: VoltActionBuilder<R>.() -> Unit) {
-        buttonBindings.add(this to block)
+        bind(this) { buildAction(block) }
+    }
+
+    /**
+     * Maps an action to a button event, building it once and rearming it each time the event fires.
+     *
+     * The [block] only runs when a new instance is needed, so it should not read state that changes
+     * between triggers. Graphs that cannot be rearmed are rebuilt on every trigger.
+     */
+    protected infix fun Event.ManualEvent.ButtonEvent.thenReuse(
+        block: VoltActionBuilder<R>.() -> Unit
+    ) {
+        bind(this, ActionPool { buildAction(block) })
     }
 
     /** Maps an action to an analog event */
     protected infix fun Event.ManualEvent.AnalogEvent.then(
         block: VoltActionBuilder<R>.(Float) -> Unit
     ) {
-        analogBindings.add(this to block)
+        bind(this) { value: Float -> buildAction { block(value) } }
+    }
+
+    /**
+     * Maps an action to an analog event, building it once and rearming it each time the event fires.
+     *
+     * The [block] receives the input's [AnalogHandler] rather than a value, so actions read the
+     * current value when they run.
+     */
+    protected infix fun Event.ManualEvent.AnalogEvent.thenReuse(
+        block: VoltActionBuilder<R>.(AnalogHandler) -> Unit
+    ) {
+        val handler = analogHandlers[analogInput.ordinal]
+        val pool = ActionPool { buildAction { block(handler) } }
+        bind(this) { _: Float -> pool() }
+    }
+
+    /**
+     * Writes [analogInput]'s shaped value to [sink] on every tick it changes.
+     *
+     * Unlike a [Event.ManualEvent.Change] binding, no action is built, traced or run, so continuous
+     * inputs like drive sticks cost a single call per change and do not allocate.
+     */
+    protected fun channel(analogInput: AnalogInput, sink: AnalogSink) {
+        channels[analogInput.ordinal].add(sink)
     }
 
+    /**
+     * Gets the handler of [analogInput], whose [AnalogHandler.value] is its shaped value for the
+     * current tick.
+     */
+    protected fun channel(analogInput: AnalogInput): AnalogHandler =
+        analogHandlers[analogInput.ordinal]
+
     /** Create a combo event with [buttons] */
     protected fun combo(vararg buttons: Button) = Event.ManualEvent.Combo(buttons.toSet())
 
     /** Maps an action to a combo event */
     protected infix fun Event.ManualEvent.Combo.then(block: VoltActionBuilder<R>.() -> Unit) {
-        comboBindings.add(this to block)
+        bind(this) { buildAction(block) }
     }
 
-    private fun initializeInputMappings() {
-        Button.entries.forEach { button -> buttonHandlers[button] = ButtonHandler() }
-        AnalogInput.entries.forEach { analog ->
-            analogHandlers[analog] = AnalogHandler(params.deadzone, params.inputExp)
-        }
+    /** Maps an action to a combo event, building it once and rearming it each time it fires. */
+    protected infix fun Event.ManualEvent.Combo.thenReuse(block: VoltActionBuilder<R>.() -> Unit) {
+        bind(this, ActionPool { buildAction(block) })
     }
 
-    /** Initializes inputs and defines manual events */
-    init {
-        initializeInputMappings()
-    }
+    private val inputPhase = LoopProfiler.phase("input")
+    private val eventsPhase = LoopProfiler.phase("events")
+    private val actionsPhase = LoopProfiler.phase("actions")
+    private val robotPhase = LoopProfiler.phase("robot")
 
     override fun begin() {
-        while (opModeIsActive()) tick()
+        LoopProfiler.reset()
+        ActionTracer.reset()
+        WriteFilter.reset()
+        while (opModeIsActive()) {
+            LoopProfiler.beginTick()
+            robot.beginTick()
+            tick()
+            robot.endTick()
+            LoopProfiler.endTick()
+        }
     }
 
     /** Tick the manual mode. */
     open fun tick() =
         context(telemetry) {
-            updateInputState()
-            processEvents()
-            runActions()
-            robot.update()
+            LoopProfiler.measure(inputPhase) { updateInputState() }
+            LoopProfiler.measure(eventsPhase) { processEvents() }
+            LoopProfiler.measure(actionsPhase) { runActions() }
+            LoopProfiler.measure(robotPhase) { robot.update() }
         }
 
     private fun updateInputState() {
-        Button.entries.forEach { button ->
-            val state = button.get(gamepad1, gamepad2)
-            buttonHandlers[button]?.update(state)
-        }
+        clock.tick()
+
+        buttonHandler.update(readButtons(gamepad1, gamepad2), clock.nanos)
+        pressedMask = buttonHandler.pressed
+        tappedMask = buttonHandler.tapped
+        releasedMask = buttonHandler.released
+        doubleTappedMask = buttonHandler.doubleTapped
+
+        // Most ticks no axis moves, so the axes are only processed when the snapshot differs from
+        // the last tick's or an axis still has to report that it stopped changing
+        readAnalogInputs(gamepad1, gamepad2, analogValues)
+        if (changedMask == 0 && analogValues.contentEquals(previousAnalogValues)) return
+        analogValues.copyInto(previousAnalogValues)
 
-        AnalogInput.entries.forEach { analog ->
-            val state = analog.get(gamepad1, gamepad2)
-            analogHandlers[analog]?.update(state)
+        changedMask = 0
+        for (i in analogInputs.indices) {
+            val handler = analogHandlers[i]
+            handler.update(analogValues[i])
+            if (handler.changed) changedMask = changedMask or (1 shl i)
         }
     }
 
+    // On ticks where no input changed every mask but pressedMask is empty, so only Hold bindings
+    // and instant buttons are visited
     private fun processEvents() {
-        buttonBindings.forEach { (event, action) ->
-            val handler = buttonHandlers[event.button] ?: return@forEach
+        // Buttons with an edge this tick, plus held buttons that have Hold bindings
+        var buttonMask = tappedMask or releasedMask or doubleTappedMask or (pressedMask and holdMask)
+        while (buttonMask != 0L) {
+            val i = buttonMask.countTrailingZeroBits()
+            buttonMask = buttonMask and (buttonMask - 1)
+            dispatchButton(i)
+        }
+
+        var analogMask = changedMask
+        while (analogMask != 0) {
+            val i = analogMask.countTrailingZeroBits()
+            analogMask = analogMask and (analogMask - 1)
+            dispatchAnalog(i)
+        }
+
+        // Only combos containing a tapped button can fire
+        var comboMask = tappedMask
+        while (comboMask != 0L) {
+            val i = comboMask.countTrailingZeroBits()
+            comboMask = comboMask and (comboMask - 1)
+            dispatchCombos(i)
+        }
+
+        if (pressedMask == 0L) return
+        instantButtons.forEach { (button, block) ->
+            if ((pressedMask and (1L shl button.ordinal)) != 0L) robot.block()
+        }
+    }
+
+    private fun dispatchButton(i: Int) {
+        val bit = 1L shl i
+        val bindings = buttonBindings[i]
+        for (j in bindings.indices) {
+            val (event, source) = bindings[j]
             val triggered =
                 when (event) {
-                    is Event.ManualEvent.Tap -> handler.tappedThisTick
-                    is Event.ManualEvent.Release -> handler.releasedThisTick
-                    is Event.ManualEvent.Hold -> handler.held(event.durationMs)
-                    is Event.ManualEvent.DoubleTap -> handler.doubleTappedThisTick
+                    is Event.ManualEvent.Tap -> (tappedMask and bit) != 0L
+                    is Event.ManualEvent.Release -> (releasedMask and bit) != 0L
+                    is Event.ManualEvent.Hold ->
+                        buttonHandler.held(i, event.durationMs, clock.nanos)
+                    is Event.ManualEvent.DoubleTap -> (doubleTappedMask and bit) != 0L
                 }
-            if (triggered) triggerAction(action)
+            if (triggered) triggerAction(source)
         }
+    }
+
+    private fun dispatchAnalog(i: Int) {
+        val handler = analogHandlers[i]
+        val sinks = channels[i]
+        for (j in sinks.indices) sinks[j].accept(handler.value)
 
-        analogBindings.forEach { (event, action) ->
-            val handler = analogHandlers[event.analogInput] ?: return@forEach
+        val bindings = analogBindings[i]
+        for (j in bindings.indices) {
+            val (event, source) = bindings[j]
             val triggered =
                 when (event) {
-                    is Event.ManualEvent.Change -> handler.changed
-                    is Event.ManualEvent.Threshold -> handler.changed && handler.value > event.min
+                    is Event.ManualEvent.Change -> true
+                    is Event.ManualEvent.Threshold -> handler.value > event.min
                 }
-            if (triggered) triggerAnalogAction(handler.value, action)
+            if (triggered) triggerAnalogAction(handler.value, source)
         }
+    }
 
-        comboBindings.forEach { (event, action) ->
-            val allPressed = event.buttons.all { buttonHandlers[it]?.pressed == true }
-            val anyJustPressed = event.buttons.any { buttonHandlers[it]?.tappedThisTick == true }
-            if (allPressed && anyJustPressed) triggerAction(action)
+    private fun dispatchCombos(i: Int) {
+        val bindings = comboBindings[i]
+        for (j in bindings.indices) {
+            val combo = bindings[j]
+            // A combo is indexed under each of its buttons, so only fire it from its lowest
+            // tapped button to avoid firing it twice in one tick
+            val tapped = combo.mask and tappedMask
+            if (tapped.countTrailingZeroBits() != i) continue
+            if ((combo.mask and pressedMask) == combo.mask) triggerAction(combo.source)
         }
+    }
 
-        instantButtons.forEach { (button, block) ->
-            if (buttonHandlers[button]?.pressed == true) robot.block()
-        }
+    private fun buildAction(block: VoltActionBuilder<R>.() -> Unit): Action =
+        VoltActionBuilder(robot).apply(block).build()
+
+    private fun triggerAction(source: () -> Action) {
+        startAction(source())
     }
 
-    private fun triggerAction(block: VoltActionBuilder<R>.() -> Unit) {
-        val builder = VoltActionBuilder(robot).apply(block)
-        runningActions.add(builder.build())
+    private fun triggerAnalogAction(value: Float, source: (Float) -> Action) {
+        startAction(source(value))
     }
 
-    private fun triggerAnalogAction(value: Float, block: VoltActionBuilder<R>.(Float) -> Unit) {
-        val builder = VoltActionBuilder(robot).apply { block(value) }
-        runningActions.add(builder.build())
+    private fun startAction(action: Action) {
+        runningActions.add(action)
+        if (!previewing) return
+        val canvas = if (action is PooledAction) action.preview else Canvas().also(action::preview)
+        previews[action] = canvas
+        preview.operations.addAll(canvas.operations)
     }
 
     private fun runActions() {
-        val packet = TelemetryPacket()
-        runningActions.removeAll { action ->
-            action.preview(packet.fieldOverlay())
-            !action.run(packet)
+        val now = clock.nanos
+        val sending =
+            !CompetitionMode.enabled &&
+                dash != null &&
+                now - lastDashboardNs >= dashboardIntervalNs
+
+        // Actions draw into the overlay every tick, so only the sent tick's drawing is kept
+        val overlay = packet.fieldOverlay().operations
+        overlay.clear()
+        if (sending) overlay.addAll(preview.operations)
+
+        val finished =
+            runningActions.removeAll { action ->
+                val done = !action.run(packet)
+                if (done) {
+                    previews.remove(action)
+                    if (action is PooledAction) action.release()
+                }
+                done
+            }
+        if (finished && previewing) {
+            preview.operations.clear()
+            for (action in runningActions) {
+                previews[action]?.let { preview.operations.addAll(it.operations) }
+            }
+        }
+
+        if (!sending) return
+        context(packet) {
+            ActionTracer.writePacket()
+            LoopProfiler.writePacket()
         }
-        context(packet) { ActionTracer.writePacket() }
         dash?.sendTelemetryPacket(packet)
+        packet = TelemetryPacket()
+        lastDashboardNs = now
+    }
+
+    /**
+     * Hands out rearmed instances of a binding's action graph instead of building a new one.
+     *
+     * A new instance is only built when every pooled one is still running, so steady-state
+     * triggering does not allocate. Graphs that cannot be rearmed are handed out unpooled.
+     */
+    private class ActionPool(private val factory: () -> Action) : () -> Action {
+        private val idle = ArrayDeque<PooledAction>()
+
+        override fun invoke(): Action {
+            idle.pollLast()?.let {
+                return it
+            }
+            val action = factory()
+            return if (action.isRearmable) PooledAction(this, action as RearmableAction) else action
+        }
+
+        fun release(action: PooledAction) {
+            action.inner.rearm()
+            idle.addLast(action)
+        }
+    }
+
+    /** An action graph owned by an [ActionPool], returned to it once it finishes. */
+    private class PooledAction(private val pool: ActionPool, val inner: RearmableAction) :
+        Action by inner {
+        // Every rearm of the graph draws the same preview, so it is drawn once
+        val preview: Canvas by lazy { Canvas().also(inner::preview) }
+
+        fun release() = pool.release(this)
     }
 }
@@ -0,0 +1,81 @@
+package dev.kingssack.volt.robot
+
+import com.qualcomm.hardware.lynx.LynxModule
+import dev.kingssack.volt.util.VoltLogs
+
+/**
+ * Owns bulk caching for every Lynx hub of a [Robot].
+ *
+ * Hubs are switched to [LynxModule.BulkCachingMode.MANUAL] on the first tick and their caches are
+ * cleared exactly once at the start of every tick, so each hub performs at most one bulk read per
+ * tick no matter how often its motors and encoders are read. Hubs are left uncached until then so
+ * reads during initialization are never stale.
+ *
+ * Readers on other threads must go through [read], which takes a fresh bulk read for them without
+ * emptying the caches the tick reads from.
+ *
+ * The SDK performs a tick's bulk reads itself and does not report them, so only the reads [read]
+ * takes for other threads are counted.
+ *
+ * @property hubs the hubs to manage
+ */
+class BulkCache internal constructor(val hubs: List<LynxModule>) {
+    private val lock = Any()
+    private var manual = false
+    private var backgroundReadsThisTick = 0
+
+    /** How many bulk reads [read] took for other threads during the previous tick. */
+    var backgroundReadsLastTick = 0
+        private set
+
+    /** How many bulk reads [read] took for other threads since the first tick. */
+    @Volatile
+    var backgroundReads = 0L
+        private set
+
+    /** Clears every hub's cache. Called once at the start of each tick. */
+    fun beginTick() =
+        synchronized(lock) {
+            if (!manual) {
+                for (hub in hubs) hub.bulkCachingMode = LynxModule.BulkCachingMode.MANUAL
+                manual = true
+            } else {
+                checkModes()
+            }
+
+            backgroundReadsLastTick = backgroundReadsThisTick
+            backgroundReadsThisTick = 0
+            for (hub in hubs) hub.clearBulkCache()
+        }
+
+    /**
+     * Runs [block], which reads hardware from a thread other than the OpMode's.
+     *
+     * Each of [hubs] takes a bulk read of its own first, so [block] reads fresh data at any point
+     * in a tick. The new data replaces the hub's cached data, so the rest of the tick reads it too;
+     * it is newer than the tick's but still a complete bulk read, and the cache is never left empty
+     * for the OpMode to read again. The next tick does not clear the caches until [block] returns.
+     *
+     * @param hubs the hubs [block] reads, by default every hub
+     * @return the result of [block]
+     */
+    fun <T> read(hubs: List<LynxModule> = this.hubs, block: () -> T): T =
+        synchronized(lock) {
+            // Hubs read directly until the first tick, so their data is already fresh
+            if (manual) {
+                for (hub in hubs) hub.bulkData
+                backgroundReads += hubs.size
+                backgroundReadsThisTick += hubs.size
+            }
+            block()
+        }
+
+    private fun checkModes() {
+        for (hub in hubs) {
+            if (hub.bulkCachingMode != LynxModule.BulkCachingMode.MANUAL) {
+                VoltLogs.log("Bulk caching mode of ${hub.deviceName} was changed, resetting")
+                hub.bulkCachingMode = LynxModule.BulkCachingMode.MANUAL
+            }
+        }
+    }
+}
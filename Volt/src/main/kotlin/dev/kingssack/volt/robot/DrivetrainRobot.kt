@@ -10,12 +10,26 @@ import org.firstinspires.ftc.robotcore.external.Telemetry
  * @param T The type of drivetrain the robot has.
  * @param hardwareMap The hardware map of the robot.
  * @property drivetrain The drivetrain of the robot.
+ * @param diagnostics Whether loop diagnostics are shown on the Driver Station.
  */
-open class DrivetrainRobot<T : Drivetrain>(hardwareMap: HardwareMap, open val drivetrain: T) :
-    Robot(hardwareMap) {
+open class DrivetrainRobot<T : Drivetrain>(
+    hardwareMap: HardwareMap,
+    open val drivetrain: T,
+    diagnostics: Boolean = false,
+) : Robot(hardwareMap, diagnostics = diagnostics) {
+    override fun beginTick() {
+        super.beginTick()
+        drivetrain.beginTick()
+    }
+
+    override fun close() {
+        super.close()
+        drivetrain.close()
+    }
+
     context(telemetry: Telemetry)
-    override fun update() {
-        drivetrain.update()
-        super.update()
+    override fun updateAttachments() {
+        updateAttachment(drivetrain)
+        super.updateAttachments()
     }
 }
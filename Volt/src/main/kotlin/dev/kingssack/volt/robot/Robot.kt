@@ -3,6 +3,7 @@ package dev.kingssack.volt.robot
 import com.acmerobotics.roadrunner.ftc.LazyHardwareMapImu
 import com.acmerobotics.roadrunner.ftc.LazyImu
 import com.qualcomm.hardware.dfrobot.HuskyLens
+import com.qualcomm.hardware.lynx.LynxModule
 import com.qualcomm.hardware.rev.Rev2mDistanceSensor
 import com.qualcomm.hardware.rev.RevBlinkinLedDriver
 import com.qualcomm.hardware.rev.RevHubOrientationOnRobot
@@ -10,13 +11,22 @@ import com.qualcomm.robotcore.hardware.AnalogInput
 import com.qualcomm.robotcore.hardware.CRServo
 import com.qualcomm.robotcore.hardware.DcMotor
 import com.qualcomm.robotcore.hardware.DcMotorEx
+import com.qualcomm.robotcore.hardware.HardwareDevice
 import com.qualcomm.robotcore.hardware.HardwareMap
 import com.qualcomm.robotcore.hardware.IMU
 import com.qualcomm.robotcore.hardware.LED
 import com.qualcomm.robotcore.hardware.NormalizedColorSensor
 import com.qualcomm.robotcore.hardware.Servo
 import dev.kingssack.volt.attachment.Attachment
+import dev.kingssack.volt.util.hardware.PolledValue
+import dev.kingssack.volt.util.hardware.SensorScheduler
+import dev.kingssack.volt.util.hardware.WriteFilter
 import dev.kingssack.volt.util.telemetry.ActionTracer
+import dev.kingssack.volt.util.telemetry.CompetitionMode
+import dev.kingssack.volt.util.telemetry.LoopProfiler
+import dev.kingssack.volt.util.telemetry.OpModeTelemetry
+import dev.kingssack.volt.util.telemetry.TelemetryScheduler
+import java.util.IdentityHashMap
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.asStateFlow
 import org.firstinspires.ftc.robotcore.external.Telemetry
@@ -32,16 +42,35 @@ sealed interface RobotState {
     data class Fault(val error: Throwable) : RobotState
 }
 
-/** Represents a robot with attachments. */
+/**
+ * Represents a robot with attachments.
+ *
+ * @param hardwareMap the hardware map of the robot
+ * @param tracer the tracer that records running actions
+ * @param telemetryScheduler decides when attachment telemetry is sampled and sent
+ * @param profiler times each attachment's update
+ * @property sensors samples the robot's slow sensors at their own rates
+ * @property diagnostics whether loop timing, bulk reads and suppressed writes are shown on the
+ *   Driver Station
+ */
 open class Robot(
     private val hardwareMap: HardwareMap,
     private val tracer: ActionTracer = ActionTracer,
+    private val telemetryScheduler: TelemetryScheduler = TelemetryScheduler(),
+    private val profiler: LoopProfiler = LoopProfiler,
+    val sensors: SensorScheduler = SensorScheduler(),
+    val diagnostics: Boolean = false,
 ) {
     private val _state = MutableStateFlow<RobotState>(RobotState.Initializing)
     val state = _state.asStateFlow()
 
     internal val attachments = mutableListOf<Attachment>()
 
+    private val attachmentPhases = IdentityHashMap<Attachment, LoopProfiler.Phase>()
+
+    /** Bulk caching for every hub of the robot. */
+    val bulkCache = BulkCache(hardwareMap.getAll(LynxModule::class.java))
+
     protected fun registerAttachment(attachment: Attachment) {
         attachments.add(attachment)
     }
@@ -53,35 +82,40 @@ open class Robot(
      * Helper function to create a motor property delegate.
      *
      * @param name the name of the motor
-     * @return a Lazy that gets the motor from the hardware map
+     * @return a Lazy that gets the motor from the hardware map, filtered by [WriteFilter]
      */
-    fun motor(name: String): Lazy<DcMotor> = lazy { hardwareMap.dcMotor.get(name) }
+    fun motor(name: String): Lazy<DcMotor> = lazy {
+        hardwareMap.dcMotor.get(name).let { if (it is DcMotorEx) WriteFilter.wrap(it) else it }
+    }
 
     /**
      * Helper function to create a motorEx property delegate.
      *
      * @param name the name of the motorEx
-     * @return a Lazy that gets the motorEx from the hardware map
+     * @return a Lazy that gets the motorEx from the hardware map, filtered by [WriteFilter]
      */
     fun motorEx(name: String): Lazy<DcMotorEx> = lazy {
-        hardwareMap.get(DcMotorEx::class.java, name)
+        WriteFilter.wrap(hardwareMap.get(DcMotorEx::class.java, name))
     }
 
     /**
      * Helper function to create a servo property delegate.
      *
      * @param name the name of the servo
-     * @return a Lazy that gets the servo from the hardware map
+     * @return a Lazy that gets the servo from the hardware map, filtered by [WriteFilter]
      */
-    fun servo(name: String): Lazy<Servo> = lazy { hardwareMap.servo.get(name) }
+    fun servo(name: String): Lazy<Servo> = lazy { WriteFilter.wrap(hardwareMap.servo.get(name)) }
 
     /**
      * Helper function to create a continuous rotation servo property delegate.
      *
      * @param name the name of the continuous rotation servo
-     * @return a Lazy that gets the continuous rotation servo from the hardware map
+     * @return a Lazy that gets the continuous rotation servo from the hardware map, filtered by
+     *   [WriteFilter]
      */
-    fun crServo(name: String): Lazy<CRServo> = lazy { hardwareMap.crservo.get(name) }
+    fun crServo(name: String): Lazy<CRServo> = lazy {
+        WriteFilter.wrap(hardwareMap.crservo.get(name))
+    }
 
     /**
      * Helper function to create a HuskyLens property delegate.
@@ -97,21 +131,39 @@ open class Robot(
      * Helper function to create a Rev2mDistanceSensor property delegate.
      *
      * @param name the name of the Rev2mDistanceSensor
-     * @return a Lazy that gets the Rev2mDistanceSensor from the hardware
+     * @param sampleRateHz how often the distance is sampled by [sensors]
+     * @return a Lazy that gets the Rev2mDistanceSensor from the hardware map, polled by [sensors]
      */
-    fun distanceSensor(name: String): Lazy<Rev2mDistanceSensor> = lazy {
-        hardwareMap.get(Rev2mDistanceSensor::class.java, name)
-    }
+    fun distanceSensor(name: String, sampleRateHz: Double = 20.0): Lazy<Rev2mDistanceSensor> =
+        lazy {
+            sensors.wrap(hardwareMap.get(Rev2mDistanceSensor::class.java, name), sampleRateHz)
+        }
 
     /**
      * Helper function to create a NormalizedColorSensor property delegate.
      *
      * @param name the name of the NormalizedColorSensor
-     * @return a Lazy that gets the NormalizedColorSensor from the hardware map
+     * @param sampleRateHz how often the colors are sampled by [sensors]
+     * @return a Lazy that gets the NormalizedColorSensor from the hardware map, polled by [sensors]
      */
-    fun colorSensor(name: String): Lazy<NormalizedColorSensor> = lazy {
-        hardwareMap.get(NormalizedColorSensor::class.java, name)
-    }
+    fun colorSensor(name: String, sampleRateHz: Double = 20.0): Lazy<NormalizedColorSensor> =
+        lazy {
+            sensors.wrap(hardwareMap.get(NormalizedColorSensor::class.java, name), sampleRateHz)
+        }
+
+    /**
+     * Helper function to poll any slow read, such as a camera or smart sensor, with [sensors].
+     *
+     * @param sampleRateHz how often [read] is sampled
+     * @param device the device [read] reads from, so it can be read alongside its bus
+     * @param read reads the sensor
+     * @return the polled value
+     */
+    fun <T> polled(
+        sampleRateHz: Double,
+        device: HardwareDevice? = null,
+        read: () -> T,
+    ): PolledValue<T> = sensors.register(sampleRateHz, device, read)
 
     /**
      * Helper function to create an IMU property delegate.
@@ -158,38 +210,95 @@ open class Robot(
      */
     fun analogInput(name: String): Lazy<AnalogInput> = lazy { hardwareMap.analogInput.get(name) }
 
+    /** Prepares the robot for a new tick. Called by the OpMode before anything else in the tick. */
+    open fun beginTick() {
+        bulkCache.beginTick()
+        sensors.poll()
+    }
+
+    /** Ends the tick. Called by the OpMode after everything else in the tick. */
+    open fun endTick() {}
+
+    /** Releases the robot's resources. Called by the OpMode once it has ended. */
+    open fun close() {
+        sensors.close()
+    }
+
     /**
      * Updates the robot.
      *
+     * Attachments update every tick, but telemetry is only written and sent on ticks where the
+     * [TelemetryScheduler] refreshes it. On other ticks an [OpModeTelemetry] keeps the OpMode's own
+     * lines for the next refresh; any other [telemetry] is cleared, since its lines cannot be kept
+     * apart from ones written again on the next tick.
+     *
      * @param telemetry for updating telemetry
      */
     context(telemetry: Telemetry)
     open fun update() {
-        with(telemetry) {
-            addLine()
-            tracer.writeTelemetry()
-
-            if (state.value is RobotState.Fault) {
-                telemetry.update()
-                return
-            }
-
-            addLine()
-            addLine("=== Attachments ===")
-            addLine()
+        val refreshing = telemetryScheduler.beginTick(telemetry)
 
+        if (state.value !is RobotState.Fault) {
             _state.value = RobotState.Idle
+            updateAttachments()
+        }
+
+        val opModeTelemetry = telemetry as? OpModeTelemetry
+        if (!refreshing) {
+            if (opModeTelemetry != null) opModeTelemetry.endTick() else telemetry.clear()
+            return
+        }
 
-            for (attachment in attachments) {
-                attachment.update()
+        // The OpMode's lines were written before the robot's, so they are listed first
+        opModeTelemetry?.flush()
+        with(telemetry) {
+            if (!CompetitionMode.enabled) {
+                addLine()
+                tracer.writeTelemetry()
+            }
+            if (diagnostics) {
                 addLine()
+                profiler.writeTelemetry()
+                addData("Background Bulk Reads", bulkCache.backgroundReadsLastTick)
+                addData("Suppressed Writes", WriteFilter.suppressedWrites)
+            }
 
-                if (attachment.isBusy() && state.value == RobotState.Idle) {
-                    _state.value = RobotState.Running
-                }
+            if (state.value !is RobotState.Fault) {
+                addLine()
+                addLine("=== Attachments ===")
+                addLine()
+                telemetryScheduler.flush()
             }
 
             telemetry.update()
         }
     }
+
+    /**
+     * Updates every registered attachment.
+     *
+     * @param telemetry for updating telemetry
+     */
+    context(telemetry: Telemetry)
+    protected open fun updateAttachments() {
+        for (attachment in attachments) updateAttachment(attachment)
+    }
+
+    /**
+     * Updates [attachment], timing it and scheduling its telemetry.
+     *
+     * @param telemetry for updating telemetry
+     */
+    context(telemetry: Telemetry)
+    protected fun updateAttachment(attachment: Attachment) {
+        val phase =
+            attachmentPhases.getOrPut(attachment) { profiler.phase("attachment/${attachment.name}") }
+        profiler.measure(phase) {
+            context(telemetryScheduler.sample(attachment, telemetry)) { attachment.update() }
+        }
+
+        if (attachment.isBusy() && state.value == RobotState.Idle) {
+            _state.value = RobotState.Running
+        }
+    }
 }
@@ -7,13 +7,17 @@ import dev.frozenmilk.sinister.targeting.NarrowSearch
 import dev.frozenmilk.sinister.targeting.SearchTarget
 import dev.kingssack.volt.annotations.VoltAction
 import dev.kingssack.volt.attachment.Attachment
+import dev.kingssack.volt.core.ActionLabels
 import dev.kingssack.volt.model.ActionMetadata
 import dev.kingssack.volt.model.EventMetadata
 import dev.kingssack.volt.model.ParameterMetadata
 import dev.kingssack.volt.model.RobotMetadata
 import dev.kingssack.volt.robot.Robot
 import dev.kingssack.volt.util.Event
+import dev.kingssack.volt.util.hardware.SensorScheduler
 import dev.kingssack.volt.util.telemetry.ActionTracer
+import dev.kingssack.volt.util.telemetry.LoopProfiler
+import dev.kingssack.volt.util.telemetry.TelemetryScheduler
 import java.lang.reflect.GenericArrayType
 import java.lang.reflect.Method
 import java.lang.reflect.Modifier
@@ -70,6 +74,7 @@ object MetadataService {
             robots.clear()
             actions.clear()
             events.clear()
+            ActionLabels.clear()
         }
     }
 
@@ -129,10 +134,20 @@ object MetadataService {
         )
     }
 
+    // Constructor parameters supplied by the framework rather than configured by users
+    private val frameworkParams =
+        setOf(
+            HardwareMap::class,
+            ActionTracer::class,
+            TelemetryScheduler::class,
+            LoopProfiler::class,
+            SensorScheduler::class,
+        )
+
     private fun extractConstructorParams(cls: Class<*>): List<ParameterMetadata> {
         val primaryConstructor = cls.kotlin.primaryConstructor ?: return emptyList()
         return primaryConstructor.valueParameters
-            .filter { it.type.classifier != HardwareMap::class && it.type.classifier != ActionTracer::class }
+            .filter { it.type.classifier !in frameworkParams }
             .map { param ->
                 ParameterMetadata(
                     name = param.name ?: "arg",
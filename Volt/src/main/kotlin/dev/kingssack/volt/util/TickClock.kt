@@ -0,0 +1,26 @@
+package dev.kingssack.volt.util
+
+import java.lang.System.nanoTime
+
+/**
+ * A clock that is read once per tick.
+ *
+ * Everything that runs in a tick reads the time sampled by [tick], so it all sees the same
+ * timestamp and the system clock is not read again for every button or timer.
+ */
+class TickClock {
+    private val origin = nanoTime()
+
+    /** The nanoseconds from the clock's creation to the start of the current tick. */
+    var nanos = 0L
+        private set
+
+    /** [nanos] in milliseconds. */
+    val milliseconds: Double
+        get() = nanos / 1e6
+
+    /** Samples the time for a new tick. */
+    fun tick() {
+        nanos = nanoTime() - origin
+    }
+}
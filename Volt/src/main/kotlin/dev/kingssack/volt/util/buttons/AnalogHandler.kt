@@ -11,6 +11,7 @@ import kotlin.math.pow
  */
 class AnalogHandler(private val deadzone: Float = 0.05f, private val inputExp: Float = 2.0f) {
     private var previousValue = 0.0f
+    private var previousInput = 0.0f
 
     var value: Float = 0.0f
         private set
@@ -36,6 +37,13 @@ class AnalogHandler(private val deadzone: Float = 0.05f, private val inputExp: F
     }
 
     fun update(input: Float) {
+        // An unchanged input processes to the same value
+        if (input == previousInput) {
+            changed = false
+            return
+        }
+        previousInput = input
+
         value = processInput(input)
         changed = value != previousValue
         previousValue = value
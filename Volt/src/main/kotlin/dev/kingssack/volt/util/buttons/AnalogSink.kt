@@ -0,0 +1,11 @@
+package dev.kingssack.volt.util.buttons
+
+/**
+ * Receives the shaped value of an [AnalogInput] each time it changes.
+ *
+ * Values are passed as a primitive, so delivering one does not allocate.
+ */
+fun interface AnalogSink {
+    /** Receives the shaped [value]. */
+    fun accept(value: Float)
+}
@@ -1,86 +1,100 @@
 package dev.kingssack.volt.util.buttons
 
-import com.qualcomm.robotcore.util.ElapsedTime
-
 /**
- * Handles button state updates and provides methods for detecting various button events.
+ * Tracks the state of every [Button] and detects their events.
+ *
+ * Each button's state is a bit in the masks below, or an element of a primitive array, at its
+ * ordinal. Only buttons whose raw state changed are visited on an update, and every button is
+ * timed against the same tick timestamp.
  *
  * @param doubleTapThreshold the maximum time (ms) between two presses to count as a double tap
  * @param debounceThreshold the minimum time (ms) between state changes to prevent bouncing
  */
-class ButtonHandler(
-    private val doubleTapThreshold: Double = 300.0,
-    private val debounceThreshold: Double = 50.0,
-) {
-    private var lastPressTime = 0.0
-    private var lastReleaseTime = 0.0
-    private var lastUpdateTime = 0.0
-    private var tapCount = 0
+class ButtonHandler(doubleTapThreshold: Double = 300.0, debounceThreshold: Double = 50.0) {
+    private val doubleTapNs = (doubleTapThreshold * 1e6).toLong()
+    private val debounceNs = (debounceThreshold * 1e6).toLong()
 
-    var pressed = false
-        private set
-    var tappedThisTick = false
+    private val count = Button.entries.size
+
+    // Far enough in the past that the first change is never debounced or counted as a double tap
+    private val lastChangeNs = LongArray(count) { NEVER }
+    private val lastPressNs = LongArray(count) { NEVER }
+    private val lastReleaseNs = LongArray(count) { NEVER }
+    private val tapCounts = IntArray(count)
+
+    /** The buttons that are held down. */
+    var pressed = 0L
         private set
-    var releasedThisTick = false
+
+    /** The buttons that were pressed this tick. */
+    var tapped = 0L
         private set
-    var doubleTappedThisTick = false
+
+    /** The buttons that were released this tick. */
+    var released = 0L
         private set
 
-    private val runtime: ElapsedTime = ElapsedTime()
+    /** The buttons that were tapped twice in quick succession this tick. */
+    var doubleTapped = 0L
+        private set
 
     /**
-     * Updates the button state. Should be called in every loop iteration.
+     * Updates the button states. Should be called in every loop iteration.
      *
-     * @param buttonPressed The current raw state of the button from the gamepad.
+     * @param raw the raw state of every button, as read by [readButtons]
+     * @param nowNs the tick timestamp in nanoseconds
      */
-    fun update(buttonPressed: Boolean) {
-        val currentTime = runtime.milliseconds()
+    fun update(raw: Long, nowNs: Long) {
+        tapped = 0L
+        released = 0L
+        doubleTapped = 0L
 
-        // Debounce check
-        if (currentTime - lastUpdateTime < debounceThreshold) {
-            return
-        }
-
-        tappedThisTick = false
-        releasedThisTick = false
-        doubleTappedThisTick = false
-
-        if (buttonPressed != pressed) {
-            lastUpdateTime = currentTime
-            pressed = buttonPressed
-
-            if (pressed) {
-                tappedThisTick = true
+        var changed = raw xor pressed
+        while (changed != 0L) {
+            val i = changed.countTrailingZeroBits()
+            val bit = changed and -changed
+            changed = changed xor bit
 
-                if (currentTime - lastReleaseTime < doubleTapThreshold) {
-                    tapCount++
+            // Debounce check
+            if (nowNs - lastChangeNs[i] < debounceNs) continue
+            lastChangeNs[i] = nowNs
+            pressed = pressed xor bit
 
-                    if (tapCount >= 2) {
-                        tapCount = 0
-                        doubleTappedThisTick = true
+            if ((raw and bit) != 0L) {
+                tapped = tapped or bit
+                if (nowNs - lastReleaseNs[i] < doubleTapNs) {
+                    if (++tapCounts[i] >= 2) {
+                        tapCounts[i] = 0
+                        doubleTapped = doubleTapped or bit
                     }
                 } else {
-                    tapCount = 1
+                    tapCounts[i] = 1
                 }
-                lastPressTime = currentTime
+                lastPressNs[i] = nowNs
             } else {
-                releasedThisTick = true
-                lastReleaseTime = currentTime
+                released = released or bit
+                lastReleaseNs[i] = nowNs
             }
         }
     }
 
-    /** Checks if the button is currently held down for at least [milliseconds]. */
-    fun held(milliseconds: Double): Boolean {
-        return pressed && (runtime.milliseconds() - lastPressTime > milliseconds)
-    }
+    /** Checks if the button at [index] has been held down for at least [milliseconds]. */
+    fun held(index: Int, milliseconds: Double, nowNs: Long): Boolean =
+        (pressed and (1L shl index)) != 0L && nowNs - lastPressNs[index] > milliseconds * 1e6
 
-    /** Resets the internal state (tap count, etc.). */
+    /** Resets the internal state (tap counts, etc.). */
     fun reset() {
-        tapCount = 0
-        pressed = false
-        tappedThisTick = false
-        releasedThisTick = false
-        doubleTappedThisTick = false
+        tapCounts.fill(0)
+        lastChangeNs.fill(NEVER)
+        lastPressNs.fill(NEVER)
+        lastReleaseNs.fill(NEVER)
+        pressed = 0L
+        tapped = 0L
+        released = 0L
+        doubleTapped = 0L
+    }
+
+    private companion object {
+        const val NEVER = Long.MIN_VALUE / 2
     }
 }
@@ -61,3 +61,57 @@ enum class AnalogInput(val get: (Gamepad, Gamepad) -> Float) {
     TOUCHPAD_FINGER_TWO_X2({ _, g2 -> g2.touchpad_finger_2_x }),
     TOUCHPAD_FINGER_TWO_Y2({ _, g2 -> g2.touchpad_finger_2_y }),
 }
+
+/**
+ * Reads every [Button] on both gamepads into a mask with each button's bit at its ordinal.
+ *
+ * The fields are read directly, in ordinal order, rather than through each button's [Button.get].
+ */
+fun readButtons(gamepad1: Gamepad, gamepad2: Gamepad): Long =
+    readButtons(gamepad1) or (readButtons(gamepad2) shl Button.A2.ordinal)
+
+private fun readButtons(g: Gamepad): Long {
+    var mask = 0L
+    if (g.a) mask = mask or (1L shl 0)
+    if (g.b) mask = mask or (1L shl 1)
+    if (g.x) mask = mask or (1L shl 2)
+    if (g.y) mask = mask or (1L shl 3)
+    if (g.left_bumper) mask = mask or (1L shl 4)
+    if (g.right_bumper) mask = mask or (1L shl 5)
+    if (g.left_stick_button) mask = mask or (1L shl 6)
+    if (g.right_stick_button) mask = mask or (1L shl 7)
+    if (g.dpad_up) mask = mask or (1L shl 8)
+    if (g.dpad_down) mask = mask or (1L shl 9)
+    if (g.dpad_left) mask = mask or (1L shl 10)
+    if (g.dpad_right) mask = mask or (1L shl 11)
+    if (g.back) mask = mask or (1L shl 12)
+    if (g.start) mask = mask or (1L shl 13)
+    if (g.guide) mask = mask or (1L shl 14)
+    if (g.touchpad_finger_1) mask = mask or (1L shl 15)
+    if (g.touchpad_finger_2) mask = mask or (1L shl 16)
+    return mask
+}
+
+/**
+ * Reads every [AnalogInput] on both gamepads into [values] at each input's ordinal.
+ *
+ * The fields are read directly, in ordinal order, rather than through each input's
+ * [AnalogInput.get].
+ */
+fun readAnalogInputs(gamepad1: Gamepad, gamepad2: Gamepad, values: FloatArray) {
+    readAnalogInputs(gamepad1, values, 0)
+    readAnalogInputs(gamepad2, values, AnalogInput.LEFT_STICK_X2.ordinal)
+}
+
+private fun readAnalogInputs(g: Gamepad, values: FloatArray, offset: Int) {
+    values[offset] = g.left_stick_x
+    values[offset + 1] = g.left_stick_y
+    values[offset + 2] = g.right_stick_x
+    values[offset + 3] = g.right_stick_y
+    values[offset + 4] = g.left_trigger
+    values[offset + 5] = g.right_trigger
+    values[offset + 6] = g.touchpad_finger_1_x
+    values[offset + 7] = g.touchpad_finger_1_y
+    values[offset + 8] = g.touchpad_finger_2_x
+    values[offset + 9] = g.touchpad_finger_2_y
+}
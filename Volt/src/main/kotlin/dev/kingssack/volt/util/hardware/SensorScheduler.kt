@@ -0,0 +1,265 @@
+package dev.kingssack.volt.util.hardware
+
+import com.qualcomm.hardware.rev.Rev2mDistanceSensor
+import com.qualcomm.robotcore.hardware.DistanceSensor
+import com.qualcomm.robotcore.hardware.HardwareDevice
+import com.qualcomm.robotcore.hardware.NormalizedColorSensor
+import com.qualcomm.robotcore.hardware.NormalizedRGBA
+import dev.kingssack.volt.util.VoltLogs
+import java.lang.System.nanoTime
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import org.firstinspires.ftc.robotcore.external.navigation.DistanceUnit
+
+/**
+ * Samples slow sensors at their own rates so their reads stay off the loop's critical path.
+ *
+ * Each sensor is registered with a target sample rate and read into a [PolledValue]. [poll] is
+ * called once per tick and samples at most [maxReadsPerTick] sensors that are due, taking turns so
+ * every sensor is eventually sampled. Code reading a sensor gets its last sample instead of
+ * reading the bus, so loop time does not grow with the number of sensors.
+ *
+ * When [parallel] is set, sensors registered with a device are grouped by the hub and I2C bus the
+ * device is connected to. Each bus is read on its own thread while the tick runs, with its own
+ * [maxReadsPerTick] budget, and its samples are published at the start of the next tick. A tick
+ * then only waits for the slowest bus rather than for every bus in turn.
+ *
+ * @param maxReadsPerTick the most sensors sampled in a single tick, per bus when [parallel]
+ * @param parallel whether independent buses are read concurrently
+ */
+class SensorScheduler(var maxReadsPerTick: Int = 2, val parallel: Boolean = true) {
+    private val inline = PollGroup()
+    private val buses = LinkedHashMap<String, BusGroup>()
+    private var closed = false
+
+    /** How many buses are read concurrently. */
+    val busCount: Int
+        get() = buses.size
+
+    /**
+     * Registers a sensor read with the scheduler.
+     *
+     * @param sampleRateHz how often [read] should be sampled
+     * @param device the device [read] reads from, used to find its bus
+     * @param read reads the sensor
+     * @return the polled value
+     */
+    fun <T> register(
+        sampleRateHz: Double,
+        device: HardwareDevice? = null,
+        read: () -> T,
+    ): PolledValue<T> {
+        require(sampleRateHz > 0.0) { "Sample rate must be positive, got $sampleRateHz" }
+        val value = PolledValue((1e9 / sampleRateHz).toLong(), read)
+        val bus = if (parallel && device != null) busOf(device) else null
+        if (bus == null) inline.add(value) else buses.getOrPut(bus) { BusGroup(bus) }.add(value)
+        return value
+    }
+
+    /**
+     * Publishes the previous tick's bus reads and samples the sensors that are due, up to
+     * [maxReadsPerTick]. Called once per tick.
+     */
+    fun poll() {
+        for (group in buses.values) group.await()
+
+        val now = nanoTime()
+        if (!closed) for (group in buses.values) group.submit(now, maxReadsPerTick)
+        inline.poll(now, maxReadsPerTick, deferred = false)
+    }
+
+    /** Stops every bus thread. Sensors registered on a bus are not sampled afterwards. */
+    fun close() {
+        closed = true
+        for (group in buses.values) group.close()
+    }
+
+    /** Wraps [sensor] so distances are read from a sample taken at [sampleRateHz]. */
+    fun wrap(sensor: DistanceSensor, sampleRateHz: Double): DistanceSensor {
+        val distanceMm = register(sampleRateHz, sensor) { sensor.getDistance(DistanceUnit.MM) }
+        return PolledDistanceSensor(sensor, distanceMm)
+    }
+
+    /**
+     * Wraps [sensor] so distances are read from a sample taken at [sampleRateHz]. Everything else
+     * still reads [sensor].
+     */
+    fun wrap(sensor: Rev2mDistanceSensor, sampleRateHz: Double): Rev2mDistanceSensor {
+        val distanceMm = register(sampleRateHz, sensor) { sensor.getDistance(DistanceUnit.MM) }
+        return PolledRev2mDistanceSensor(sensor, distanceMm)
+    }
+
+    /** Wraps [sensor] so colors are read from a sample taken at [sampleRateHz]. */
+    fun wrap(sensor: NormalizedColorSensor, sampleRateHz: Double): NormalizedColorSensor =
+        PolledColorSensor(sensor, register(sampleRateHz, sensor) { sensor.normalizedColors })
+
+    private companion object {
+        /**
+         * Finds the hub and bus [device] is connected to from its connection info, which the SDK
+         * formats as `<hub>; bus <n>; addr7=<address>` for I2C devices.
+         */
+        fun busOf(device: HardwareDevice): String? {
+            val info = runCatching { device.connectionInfo }.getOrNull() ?: return null
+            val bus = info.indexOf("; bus ")
+            if (bus < 0) return null
+            val end = info.indexOf(';', bus + 1)
+            return if (end < 0) info else info.substring(0, end)
+        }
+    }
+}
+
+/**
+ * The last sample of a sensor registered with a [SensorScheduler].
+ *
+ * Samples are published as a single immutable snapshot, so a value and its timestamp always
+ * belong together even when the sensor is read on another thread.
+ *
+ * @property periodNs the target time between samples
+ */
+class PolledValue<T> internal constructor(val periodNs: Long, private val read: () -> T) {
+    private class Sample<T>(val value: T, val timestampNs: Long)
+
+    @Volatile private var snapshot: Sample<T>? = null
+
+    // Written by a bus thread and published by the OpMode thread once the bus has finished
+    private var pending: Sample<T>? = null
+
+    // Held by the sensor's bus thread while it reads, so the sensor is never read concurrently
+    internal var lock: Any = this
+
+    /** The [System.nanoTime] of the last sample. */
+    val timestampNs: Long
+        get() = snapshot?.timestampNs ?: 0L
+
+    /** How long ago the last sample was taken, in milliseconds. */
+    val ageMs: Double
+        get() = (nanoTime() - timestampNs) / 1e6
+
+    /**
+     * The last sample. If the sensor has never been sampled, it is read immediately once its bus
+     * has finished any read in progress.
+     */
+    val value: T
+        get() = (snapshot ?: firstSample()).value
+
+    private fun firstSample(): Sample<T> =
+        synchronized(lock) {
+            // The bus may have sampled the sensor while this waited for it
+            snapshot
+                ?: pending?.also {
+                    pending = null
+                    snapshot = it
+                }
+                ?: Sample(read(), nanoTime()).also { snapshot = it }
+        }
+
+    internal fun isDue(nowNs: Long): Boolean {
+        val last = pending ?: snapshot ?: return true
+        return nowNs - last.timestampNs >= periodNs
+    }
+
+    /** Reads the sensor now, once its bus has finished any read in progress. */
+    fun sample() {
+        synchronized(lock) { snapshot = Sample(read(), nanoTime()) }
+    }
+
+    internal fun sampleDeferred() {
+        pending = Sample(read(), nanoTime())
+    }
+
+    internal fun publish() {
+        val sample = pending ?: return
+        pending = null
+        snapshot = sample
+    }
+}
+
+private open class PollGroup {
+    // Copied on write, since sensors may be registered while a bus thread is polling
+    @Volatile var values = emptyArray<PolledValue<*>>()
+    private var cursor = 0
+
+    fun add(value: PolledValue<*>) {
+        value.lock = this
+        values += value
+    }
+
+    fun poll(nowNs: Long, budget: Int, deferred: Boolean) {
+        val values = values
+        val size = values.size
+        if (size == 0) return
+        var reads = 0
+        var checked = 0
+        while (checked < size && reads < budget) {
+            val value = values[cursor]
+            cursor = (cursor + 1) % size
+            checked++
+            if (value.isDue(nowNs)) {
+                if (deferred) value.sampleDeferred() else value.sample()
+                reads++
+            }
+        }
+    }
+}
+
+private class BusGroup(private val bus: String) : PollGroup(), Runnable {
+    private var executor: ExecutorService? = null
+    private var pending: Future<*>? = null
+    private var roundNs = 0L
+    private var budget = 0
+
+    fun submit(nowNs: Long, budget: Int) {
+        roundNs = nowNs
+        this.budget = budget
+        val executor =
+            executor ?: Executors.newSingleThreadExecutor(::newThread).also { executor = it }
+        pending = executor.submit(this)
+    }
+
+    override fun run() = synchronized(this) { poll(roundNs, budget, deferred = true) }
+
+    private fun newThread(task: Runnable) = Thread(task, "Volt I2C $bus").apply { isDaemon = true }
+
+    fun await() {
+        val round = pending ?: return
+        pending = null
+        try {
+            round.get()
+        } catch (e: ExecutionException) {
+            VoltLogs.log("Error reading sensors on $bus: ${e.cause?.message.toString()}")
+        }
+        for (value in values) value.publish()
+    }
+
+    fun close() {
+        executor?.shutdownNow()
+        executor = null
+        pending = null
+    }
+}
+
+private class PolledDistanceSensor(
+    sensor: DistanceSensor,
+    private val distanceMm: PolledValue<Double>,
+) : DistanceSensor by sensor {
+    override fun getDistance(unit: DistanceUnit): Double = unit.fromMm(distanceMm.value)
+}
+
+// Shares the sensor's I2C client without owning it, so both reach the same device
+private class PolledRev2mDistanceSensor(
+    private val sensor: Rev2mDistanceSensor,
+    private val distanceMm: PolledValue<Double>,
+) : Rev2mDistanceSensor(sensor.deviceClient, false) {
+    override fun getDistance(unit: DistanceUnit): Double = unit.fromMm(distanceMm.value)
+
+    override fun didTimeoutOccur(): Boolean = sensor.didTimeoutOccur()
+}
+
+private class PolledColorSensor(
+    sensor: NormalizedColorSensor,
+    private val colors: PolledValue<NormalizedRGBA>,
+) : NormalizedColorSensor by sensor {
+    override fun getNormalizedColors(): NormalizedRGBA = colors.value
+}
@@ -0,0 +1,91 @@
+package dev.kingssack.volt.util.hardware
+
+import com.qualcomm.robotcore.hardware.VoltageSensor
+import java.lang.System.nanoTime
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+
+/**
+ * Samples a [VoltageSensor] on a background thread and smooths it with a low-pass filter.
+ *
+ * Reading a hub's voltage is a round trip that bulk caching does not cover, and battery voltage
+ * changes slowly, so controllers read the filtered [voltage] instead of the sensor. Sampling
+ * starts on the first read and stops by itself once [voltage] has not been read for a second, so
+ * a sampler never outlives the OpMode that uses it. Reading [voltage] never touches the sensor.
+ *
+ * @param sensor the sensor to sample
+ * @param sampleRateHz how often [sensor] is sampled
+ * @param timeConstantS the filter's time constant in seconds
+ */
+class VoltageSampler(
+    private val sensor: VoltageSensor,
+    sampleRateHz: Double = 20.0,
+    timeConstantS: Double = 0.25,
+) {
+    private val periodNs = (1e9 / sampleRateHz).toLong()
+    private val alpha = (1.0 / sampleRateHz).let { dt -> dt / (timeConstantS + dt) }
+
+    @Volatile private var filtered = Double.NaN
+    @Volatile private var lastReadNs = 0L
+    @Volatile private var sampling = false
+
+    // Guards scheduling only, so a read never waits on the sensor
+    private val lock = Any()
+    private var task: ScheduledFuture<*>? = null
+
+    init {
+        require(sampleRateHz > 0.0) { "Sample rate must be positive, got $sampleRateHz" }
+    }
+
+    /** The filtered voltage, or [NOMINAL_VOLTAGE] until the sensor has been sampled. */
+    val voltage: Double
+        get() {
+            lastReadNs = nanoTime()
+            if (!sampling) start()
+            val voltage = filtered
+            return if (voltage.isNaN()) NOMINAL_VOLTAGE else voltage
+        }
+
+    private fun start() {
+        synchronized(lock) {
+            if (sampling) return
+            sampling = true
+            task = executor.scheduleAtFixedRate(::run, 0L, periodNs, TimeUnit.NANOSECONDS)
+        }
+    }
+
+    private fun run() {
+        if (nanoTime() - lastReadNs > IDLE_NS) {
+            synchronized(lock) {
+                // Read again in case voltage was read while waiting for the lock
+                if (nanoTime() - lastReadNs <= IDLE_NS) return
+                sampling = false
+                task?.cancel(false)
+            }
+            return
+        }
+        sample()
+    }
+
+    // Only called on the executor's single thread
+    private fun sample() {
+        val raw = sensor.voltage
+        // The SDK reports 0 when a read fails, which would make every compensated power infinite
+        if (raw <= 0.0) return
+        val last = filtered
+        filtered = if (last.isNaN()) raw else last + alpha * (raw - last)
+    }
+
+    companion object {
+        /** The voltage reported before the first good sample. */
+        const val NOMINAL_VOLTAGE = 12.0
+
+        private const val IDLE_NS = 1_000_000_000L
+
+        private val executor =
+            Executors.newSingleThreadScheduledExecutor {
+                Thread(it, "Volt voltage").apply { isDaemon = true }
+            }
+    }
+}
@@ -0,0 +1,177 @@
+package dev.kingssack.volt.util.hardware
+
+import com.qualcomm.robotcore.hardware.CRServo
+import com.qualcomm.robotcore.hardware.DcMotor
+import com.qualcomm.robotcore.hardware.DcMotorEx
+import com.qualcomm.robotcore.hardware.DcMotorSimple
+import com.qualcomm.robotcore.hardware.Servo
+import kotlin.math.PI
+import kotlin.math.abs
+import org.firstinspires.ftc.robotcore.external.navigation.AngleUnit
+
+/**
+ * Suppresses hardware writes that would not change a device's output.
+ *
+ * Every write to a hub is a blocking round trip, so the wrapped devices returned by [wrap] remember
+ * the last value they sent and skip a write when the new value is within the configured epsilon of
+ * it. Writes of exactly zero are always sent if the last value was not exactly zero, so devices can
+ * always be stopped. Changing a device's mode or direction forgets its last values.
+ *
+ * Devices must only be written from the OpMode thread.
+ *
+ * @property powerEpsilon the smallest motor or continuous rotation servo power change that is sent
+ * @property velocityEpsilon the smallest motor velocity change that is sent, in ticks per second
+ * @property positionEpsilon the smallest servo position change that is sent
+ */
+object WriteFilter {
+    var powerEpsilon = 1e-3
+    var velocityEpsilon = 1.0
+    var positionEpsilon = 1e-3
+
+    /** How many writes were sent to hardware. */
+    var sentWrites = 0L
+        private set
+
+    /** How many writes were suppressed because they would not change the output. */
+    var suppressedWrites = 0L
+        private set
+
+    /** Resets the write counters. */
+    fun reset() {
+        sentWrites = 0L
+        suppressedWrites = 0L
+    }
+
+    /** Wraps [motor] so redundant writes are suppressed. */
+    fun wrap(motor: DcMotorEx): DcMotorEx =
+        motor as? FilteredDcMotorEx ?: FilteredDcMotorEx(motor)
+
+    /** Wraps [servo] so redundant writes are suppressed. */
+    fun wrap(servo: Servo): Servo = servo as? FilteredServo ?: FilteredServo(servo)
+
+    /** Wraps [crServo] so redundant writes are suppressed. */
+    fun wrap(crServo: CRServo): CRServo = crServo as? FilteredCRServo ?: FilteredCRServo(crServo)
+
+    /** Whether [value] should be sent to replace [last] given [epsilon], counting the outcome. */
+    internal fun shouldWrite(last: Double, value: Double, epsilon: Double): Boolean =
+        count(if (value == 0.0) last != 0.0 else last.isNaN() || abs(value - last) > epsilon)
+
+    /** Counts a write as sent if [changed] or suppressed otherwise, returning [changed]. */
+    internal fun count(changed: Boolean): Boolean {
+        if (changed) sentWrites++ else suppressedWrites++
+        return changed
+    }
+}
+
+private class FilteredDcMotorEx(private val motor: DcMotorEx) : DcMotorEx by motor {
+    private var lastPower = Double.NaN
+    private var lastVelocity = Double.NaN
+    private var hasTargetPosition = false
+    private var lastTargetPosition = 0
+    private var lastMode: DcMotor.RunMode? = null
+    private var lastZeroPowerBehavior: DcMotor.ZeroPowerBehavior? = null
+    private var lastDirection: DcMotorSimple.Direction? = null
+
+    private fun forgetOutputs() {
+        lastPower = Double.NaN
+        lastVelocity = Double.NaN
+    }
+
+    override fun setPower(power: Double) {
+        if (!WriteFilter.shouldWrite(lastPower, power, WriteFilter.powerEpsilon)) return
+        motor.power = power
+        lastPower = power
+        lastVelocity = Double.NaN
+    }
+
+    override fun setVelocity(angularRate: Double) {
+        if (!WriteFilter.shouldWrite(lastVelocity, angularRate, WriteFilter.velocityEpsilon)) return
+        motor.velocity = angularRate
+        lastVelocity = angularRate
+        lastPower = Double.NaN
+    }
+
+    override fun setVelocity(angularRate: Double, unit: AngleUnit) {
+        // Compared in ticks per second like the other overload, but sent as given
+        val ticksPerRev = motor.motorType.ticksPerRev
+        val velocity = unit.unnormalized.toRadians(angularRate) / (2 * PI) * ticksPerRev
+        if (!WriteFilter.shouldWrite(lastVelocity, velocity, WriteFilter.velocityEpsilon)) return
+        motor.setVelocity(angularRate, unit)
+        lastVelocity = velocity
+        lastPower = Double.NaN
+    }
+
+    override fun setTargetPosition(position: Int) {
+        if (!WriteFilter.count(!hasTargetPosition || lastTargetPosition != position)) return
+        motor.targetPosition = position
+        lastTargetPosition = position
+        hasTargetPosition = true
+    }
+
+    override fun setMode(mode: DcMotor.RunMode) {
+        // Resetting the encoder is a command rather than a setting, so it is always sent
+        val reset = mode == DcMotor.RunMode.STOP_AND_RESET_ENCODER
+        if (!WriteFilter.count(reset || lastMode != mode)) return
+        motor.mode = mode
+        lastMode = mode
+        forgetOutputs()
+    }
+
+    override fun setZeroPowerBehavior(zeroPowerBehavior: DcMotor.ZeroPowerBehavior) {
+        if (!WriteFilter.count(lastZeroPowerBehavior != zeroPowerBehavior)) return
+        motor.zeroPowerBehavior = zeroPowerBehavior
+        lastZeroPowerBehavior = zeroPowerBehavior
+    }
+
+    override fun setDirection(direction: DcMotorSimple.Direction) {
+        if (!WriteFilter.count(lastDirection != direction)) return
+        motor.direction = direction
+        lastDirection = direction
+        forgetOutputs()
+    }
+
+    override fun setMotorEnable() {
+        motor.setMotorEnable()
+        forgetOutputs()
+    }
+
+    override fun setMotorDisable() {
+        motor.setMotorDisable()
+        forgetOutputs()
+    }
+}
+
+private class FilteredServo(private val servo: Servo) : Servo by servo {
+    private var lastPosition = Double.NaN
+
+    override fun setPosition(position: Double) {
+        if (!WriteFilter.shouldWrite(lastPosition, position, WriteFilter.positionEpsilon)) return
+        servo.position = position
+        lastPosition = position
+    }
+
+    override fun setDirection(direction: Servo.Direction) {
+        servo.direction = direction
+        lastPosition = Double.NaN
+    }
+
+    override fun scaleRange(min: Double, max: Double) {
+        servo.scaleRange(min, max)
+        lastPosition = Double.NaN
+    }
+}
+
+private class FilteredCRServo(private val crServo: CRServo) : CRServo by crServo {
+    private var lastPower = Double.NaN
+
+    override fun setPower(power: Double) {
+        if (!WriteFilter.shouldWrite(lastPower, power, WriteFilter.powerEpsilon)) return
+        crServo.power = power
+        lastPower = power
+    }
+
+    override fun setDirection(direction: DcMotorSimple.Direction) {
+        crServo.direction = direction
+        lastPower = Double.NaN
+    }
+}
@@ -2,26 +2,116 @@ package dev.kingssack.volt.util.telemetry
 
 import com.acmerobotics.dashboard.telemetry.TelemetryPacket
 import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+import java.util.concurrent.atomic.AtomicReferenceArray
 import org.firstinspires.ftc.robotcore.external.Telemetry
 
+/**
+ * Records running and completed [TracedAction]s.
+ *
+ * Completed actions are written to a fixed-size ring buffer of primitive records and to a duration
+ * histogram for their label, so tracing does not allocate or grow while an OpMode runs.
+ */
 object ActionTracer {
-    private const val MAX_TRACE_SIZE = 100
-    private val trace = mutableListOf<TracedAction>()
-    private val running = ConcurrentHashMap.newKeySet<TracedAction>()
+    private const val TRACE_SIZE = 128
+    private const val TRACE_MASK = TRACE_SIZE - 1
+    private const val MAX_RUNNING = 32
+
+    // Marks a running action that did not fit in a slot
+    private const val UNLISTED = -2
+
+    // Completed action records, written lock-free. A slot's sequence is set to -1 while it is
+    // being written and to its record's sequence once it is complete.
+    private val head = AtomicLong()
+    private val traceSeq = AtomicLongArray(LongArray(TRACE_SIZE) { -1L })
+    private val traceLabel = IntArray(TRACE_SIZE)
+    private val traceDurationNs = LongArray(TRACE_SIZE)
+    private var published = 0L
+
+    // Running actions claim the first free slot, so they are listed roughly in start order
+    private val running = AtomicReferenceArray<TracedAction?>(MAX_RUNNING)
+    private val unlisted = AtomicInteger()
+
+    /** How many running actions are not listed because every slot was taken. */
+    val unlistedRunning: Int
+        get() = unlisted.get()
+
+    private val statsByLabel = ConcurrentHashMap<String, LabelStats>()
+
+    @Volatile private var statsById = emptyArray<LabelStats>()
+
+    /**
+     * Duration statistics for one action label.
+     *
+     * @property label the action label
+     * @property count how many actions with this label have completed
+     * @property p50Ms the median duration in milliseconds
+     * @property p95Ms the 95th percentile duration in milliseconds
+     * @property maxMs the longest duration in milliseconds
+     */
+    data class Summary(
+        val label: String,
+        val count: Long,
+        val p50Ms: Double,
+        val p95Ms: Double,
+        val maxMs: Double,
+    )
+
+    /** Gets the statistics for [label], registering it if needed. */
+    internal fun stats(label: String): LabelStats =
+        statsByLabel[label]
+            ?: synchronized(this) {
+                statsByLabel.getOrPut(label) {
+                    LabelStats(label, statsById.size).also { statsById = statsById + it }
+                }
+            }
 
     context(action: TracedAction)
     fun markRunning() {
-        trace.add(action)
-        if (trace.size > MAX_TRACE_SIZE) {
-            trace.removeAt(0)
+        for (i in 0 until MAX_RUNNING) {
+            if (running.compareAndSet(i, null, action)) {
+                action.slot = i
+                return
+            }
         }
-
-        running.add(action)
+        action.slot = UNLISTED
+        unlisted.incrementAndGet()
     }
 
     context(action: TracedAction)
     fun markCompleted() {
-        running.remove(action)
+        val slot = action.slot
+        if (slot >= 0) {
+            running.compareAndSet(slot, action, null)
+        } else if (slot == UNLISTED) {
+            // Actions from before a reset are no longer counted
+            unlisted.updateAndGet { maxOf(it - 1, 0) }
+        }
+        action.slot = -1
+
+        val durationNs = action.endNs - action.startNs
+        action.stats.record(durationNs)
+
+        val seq = head.getAndIncrement()
+        val i = (seq and TRACE_MASK.toLong()).toInt()
+        traceSeq.set(i, -1L)
+        traceLabel[i] = action.stats.id
+        traceDurationNs[i] = durationNs
+        traceSeq.set(i, seq)
+    }
+
+    /** Gets the duration statistics of every label that has completed at least once. */
+    fun summaries(): List<Summary> = statsById.filter { it.count > 0 }.map { it.summary() }
+
+    /** Clears the trace, running actions and all statistics. */
+    fun reset() {
+        for (i in 0 until MAX_RUNNING) running.set(i, null)
+        unlisted.set(0)
+        for (i in 0 until TRACE_SIZE) traceSeq.set(i, -1L)
+        published = head.get()
+        statsById.forEach { it.reset() }
     }
 
     context(telemetry: Telemetry)
@@ -30,22 +120,120 @@ object ActionTracer {
             addLine("=== Running Actions ===")
             addLine()
 
-            if (running.isEmpty()) {
-                addLine("None")
-            } else {
-                running
-                    .toList()
-                    .sortedBy { it.startTime }
-                    .forEachIndexed { i, action ->
-                        addData("[$i]", "${action.label} (${action.elapsedMs}ms)")
-                    }
+            var shown = 0
+            for (i in 0 until MAX_RUNNING) {
+                val action = running.get(i) ?: continue
+                addData("[$shown]", "%s (%dms)", action.label, action.elapsedMs)
+                shown++
             }
+            val unlisted = unlisted.get()
+            if (unlisted > 0) addData("[$shown+]", "%d more", unlisted)
+            else if (shown == 0) addLine("None")
         }
 
+    /** Writes actions completed since the last call and the statistics of their labels. */
     context(packet: TelemetryPacket)
     fun writePacket() {
-        trace.forEachIndexed { i, action ->
-            packet.put("action/$i/${action.label}", action.elapsedMs)
+        val end = head.get()
+        var seq = maxOf(published, end - TRACE_SIZE)
+        val labels = statsById
+        while (seq < end) {
+            val i = (seq and TRACE_MASK.toLong()).toInt()
+            // Skip records that were overwritten or are still being written
+            if (traceSeq.get(i) == seq) {
+                val label = traceLabel[i]
+                val durationNs = traceDurationNs[i]
+                if (traceSeq.get(i) == seq && label < labels.size) {
+                    labels[label].dirty = true
+                    packet.put(labels[label].durationKey, durationNs / 1e6)
+                }
+            }
+            seq++
+        }
+        published = end
+
+        for (stats in labels) {
+            if (!stats.dirty) continue
+            stats.dirty = false
+            packet.put(stats.countKey, stats.count)
+            packet.put(stats.p50Key, stats.quantileMs(0.5))
+            packet.put(stats.p95Key, stats.quantileMs(0.95))
+            packet.put(stats.maxKey, stats.maxMs)
+        }
+    }
+
+    /**
+     * A lock-free log-linear histogram of one label's durations.
+     *
+     * Durations are bucketed in microseconds with 16 buckets per power of two, so quantiles are
+     * accurate to about 6%.
+     */
+    internal class LabelStats(val label: String, val id: Int) {
+        private val buckets = AtomicLongArray(BUCKETS)
+        private val total = AtomicLong()
+        private val maxNs = AtomicLong()
+
+        val durationKey = "action/$label/ms"
+        val countKey = "action/$label/count"
+        val p50Key = "action/$label/p50"
+        val p95Key = "action/$label/p95"
+        val maxKey = "action/$label/max"
+
+        @Volatile var dirty = false
+
+        val count: Long
+            get() = total.get()
+
+        val maxMs: Double
+            get() = maxNs.get() / 1e6
+
+        fun record(durationNs: Long) {
+            buckets.incrementAndGet(bucketOf(durationNs / 1_000))
+            total.incrementAndGet()
+            var max = maxNs.get()
+            while (durationNs > max && !maxNs.compareAndSet(max, durationNs)) max = maxNs.get()
+        }
+
+        fun quantileMs(q: Double): Double {
+            val count = total.get()
+            if (count == 0L) return 0.0
+            val rank = (q * count).toLong().coerceAtLeast(1)
+            var seen = 0L
+            for (i in 0 until BUCKETS) {
+                seen += buckets.get(i)
+                if (seen >= rank) return minOf(bucketMidpointUs(i) / 1e3, maxMs)
+            }
+            return maxMs
+        }
+
+        fun summary() = Summary(label, count, quantileMs(0.5), quantileMs(0.95), maxMs)
+
+        fun reset() {
+            for (i in 0 until BUCKETS) buckets.set(i, 0)
+            total.set(0)
+            maxNs.set(0)
+            dirty = false
+        }
+
+        private companion object {
+            const val SUB_BITS = 4
+            const val SUB_COUNT = 1 shl SUB_BITS
+            const val BUCKETS = (64 - SUB_BITS + 1) * SUB_COUNT
+
+            fun bucketOf(us: Long): Int {
+                if (us < SUB_COUNT) return us.coerceAtLeast(0).toInt()
+                val exponent = 63 - us.countLeadingZeroBits()
+                val mantissa = (us ushr (exponent - SUB_BITS)).toInt() and (SUB_COUNT - 1)
+                return (exponent - SUB_BITS + 1) * SUB_COUNT + mantissa
+            }
+
+            fun bucketMidpointUs(bucket: Int): Double {
+                if (bucket < SUB_COUNT) return bucket.toDouble()
+                val exponent = bucket / SUB_COUNT + SUB_BITS - 1
+                val mantissa = bucket % SUB_COUNT
+                val width = 1L shl (exponent - SUB_BITS)
+                return ((SUB_COUNT + mantissa) * width + width / 2.0)
+            }
         }
     }
 }
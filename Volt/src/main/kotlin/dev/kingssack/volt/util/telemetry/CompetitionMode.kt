@@ -0,0 +1,24 @@
+package dev.kingssack.volt.util.telemetry
+
+import dev.kingssack.volt.opmode.VoltOpModeMeta
+
+/**
+ * Framework-wide profile for matches.
+ *
+ * Dashboard packets, field drawing and action tracing only matter when someone is watching, so
+ * while [enabled] they are skipped on every tick. Driver station telemetry and how the robot
+ * behaves are unchanged.
+ *
+ * It is set when each OpMode is created, from [VoltOpModeMeta.competition] or a `true` value under
+ * [BLACKBOARD_KEY] in the blackboard. The blackboard outlives OpModes, so setting it once keeps
+ * every later OpMode in competition mode until it is removed.
+ */
+object CompetitionMode {
+    /** The blackboard key that enables competition mode. */
+    const val BLACKBOARD_KEY = "competition"
+
+    /** Whether competition mode is enabled. */
+    @JvmStatic
+    var enabled = false
+        internal set
+}
@@ -0,0 +1,278 @@
+package dev.kingssack.volt.util.telemetry
+
+import com.acmerobotics.dashboard.telemetry.TelemetryPacket
+import java.lang.System.nanoTime
+import java.util.concurrent.ConcurrentHashMap
+import org.firstinspires.ftc.robotcore.external.Telemetry
+
+/**
+ * Times each tick of an OpMode and the phases it is made of.
+ *
+ * Phases are timed exclusively: time spent in a nested phase is not counted towards the phase that
+ * contains it, and time outside every phase is counted as `other`. Each phase keeps a rolling window
+ * of its last [WINDOW] durations, and the phase breakdown of the slowest tick is kept until [reset].
+ *
+ * Timing a phase only reads the clock and updates a few fields, so the profiler can stay enabled
+ * during matches. It must only be used from the OpMode thread.
+ */
+object LoopProfiler {
+    private const val WINDOW = 256
+    private const val MAX_DEPTH = 16
+    private const val PACKET_INTERVAL_NS = 250_000_000L
+
+    /** Whether ticks are timed. Takes effect on the next tick. */
+    @Volatile var enabled = true
+
+    private val phasesByName = ConcurrentHashMap<String, Phase>()
+    private var phases = emptyArray<Phase>()
+
+    private val other = phase("other")
+    private val ticks = RollingWindow()
+
+    private val stack = arrayOfNulls<Phase>(MAX_DEPTH)
+    private var depth = 0
+    private var overflow = 0
+    private var active = false
+    private var tickStartNs = 0L
+    private var segmentStartNs = 0L
+
+    private var worstTickNs = 0L
+    private var worstBreakdown = LongArray(0)
+
+    private var lastPacketNs = 0L
+    private val scratch = LongArray(WINDOW)
+
+    /**
+     * Timing statistics of a tick or phase.
+     *
+     * @property name the phase name, or `tick` for whole ticks
+     * @property p50Ms the median duration in milliseconds
+     * @property p95Ms the 95th percentile duration in milliseconds
+     * @property maxMs the longest duration in the window in milliseconds
+     */
+    data class Summary(val name: String, val p50Ms: Double, val p95Ms: Double, val maxMs: Double)
+
+    /** A named part of a tick, created with [phase]. */
+    class Phase internal constructor(val name: String, internal val id: Int) {
+        internal val window = RollingWindow()
+        internal var tickNs = 0L
+        internal var ran = false
+
+        internal val p50Key = "loop/$name/p50"
+        internal val p95Key = "loop/$name/p95"
+        internal val maxKey = "loop/$name/max"
+    }
+
+    internal class RollingWindow {
+        val values = LongArray(WINDOW)
+        var size = 0
+        var next = 0
+
+        fun add(ns: Long) {
+            values[next] = ns
+            next = (next + 1) % WINDOW
+            if (size < WINDOW) size++
+        }
+
+        fun summary(name: String): Summary {
+            if (size == 0) return Summary(name, 0.0, 0.0, 0.0)
+            values.copyInto(scratch, endIndex = size)
+            scratch.sort(0, size)
+            return Summary(
+                name,
+                scratch[(size - 1) / 2] / 1e6,
+                scratch[((size - 1) * 95) / 100] / 1e6,
+                scratch[size - 1] / 1e6,
+            )
+        }
+
+        fun clear() {
+            size = 0
+            next = 0
+        }
+    }
+
+    /**
+     * Gets the phase called [name], creating it if needed.
+     *
+     * Phases should be looked up once and stored rather than looked up every tick.
+     */
+    fun phase(name: String): Phase =
+        phasesByName[name]
+            ?: synchronized(this) {
+                phasesByName.getOrPut(name) {
+                    Phase(name, phases.size).also { phases = phases + it }
+                }
+            }
+
+    /** Starts timing a tick. */
+    fun beginTick() {
+        active = enabled
+        if (!active) return
+        tickStartNs = nanoTime()
+        segmentStartNs = tickStartNs
+        depth = 1
+        overflow = 0
+        stack[0] = other
+        other.ran = true
+    }
+
+    /** Finishes timing a tick started with [beginTick]. */
+    fun endTick() {
+        if (!active) return
+        val now = nanoTime()
+        stack[depth - 1]!!.tickNs += now - segmentStartNs
+        depth = 0
+        active = false
+
+        val tickNs = now - tickStartNs
+        ticks.add(tickNs)
+
+        val phases = phases
+        val worst = tickNs > worstTickNs
+        if (worst) {
+            worstTickNs = tickNs
+            if (worstBreakdown.size != phases.size) worstBreakdown = LongArray(phases.size)
+        }
+        for (phase in phases) {
+            if (worst) worstBreakdown[phase.id] = phase.tickNs
+            if (!phase.ran) continue
+            phase.window.add(phase.tickNs)
+            phase.tickNs = 0L
+            phase.ran = false
+        }
+    }
+
+    /** Starts timing [phase] within the current tick. Must be paired with [end]. */
+    fun begin(phase: Phase) {
+        if (!active) return
+        if (depth == MAX_DEPTH) {
+            overflow++
+            return
+        }
+        val now = nanoTime()
+        stack[depth - 1]!!.tickNs += now - segmentStartNs
+        stack[depth++] = phase
+        phase.ran = true
+        segmentStartNs = now
+    }
+
+    /** Finishes timing the phase started by the matching [begin]. */
+    fun end() {
+        if (!active) return
+        if (overflow > 0) {
+            overflow--
+            return
+        }
+        if (depth <= 1) return
+        val now = nanoTime()
+        stack[--depth]!!.tickNs += now - segmentStartNs
+        segmentStartNs = now
+    }
+
+    /** Times [block] as [phase]. */
+    inline fun <T> measure(phase: Phase, block: () -> T): T {
+        begin(phase)
+        try {
+            return block()
+        } finally {
+            end()
+        }
+    }
+
+    /** Gets the statistics of whole ticks. */
+    fun tickSummary(): Summary = ticks.summary("tick")
+
+    /** Gets the statistics of every phase that has run. */
+    fun summaries(): List<Summary> =
+        phases.filter { it.window.size > 0 }.map { it.window.summary(it.name) }
+
+    /**
+     * Gets the duration of each phase during the slowest tick since [reset].
+     *
+     * @return phase names mapped to milliseconds, slowest first
+     */
+    fun worstTick(): Map<String, Double> {
+        val breakdown = worstBreakdown
+        return phases
+            .filter { it.id < breakdown.size && breakdown[it.id] > 0L }
+            .sortedByDescending { breakdown[it.id] }
+            .associate { it.name to breakdown[it.id] / 1e6 }
+    }
+
+    /** Clears every window and the slowest tick. Phases stay registered. */
+    fun reset() {
+        ticks.clear()
+        for (phase in phases) {
+            phase.window.clear()
+            phase.tickNs = 0L
+            phase.ran = false
+        }
+        worstTickNs = 0L
+        worstBreakdown.fill(0L)
+        depth = 0
+        active = false
+    }
+
+    context(telemetry: Telemetry)
+    fun writeTelemetry(): Unit =
+        with(telemetry) {
+            addLine("=== Loop ===")
+            addLine()
+
+            val tick = tickSummary()
+            addData(
+                "Tick",
+                "%.1f / %.1f ms (%.0f Hz)",
+                tick.p50Ms,
+                tick.p95Ms,
+                if (tick.p50Ms > 0.0) 1000.0 / tick.p50Ms else 0.0,
+            )
+            for (phase in phases) {
+                if (phase.window.size == 0) continue
+                val summary = phase.window.summary(phase.name)
+                addData(phase.name, "%.2f / %.2f ms", summary.p50Ms, summary.p95Ms)
+            }
+
+            var slowest: Phase? = null
+            for (phase in phases) {
+                if (phase.id >= worstBreakdown.size) continue
+                if (slowest == null || worstBreakdown[phase.id] > worstBreakdown[slowest.id]) {
+                    slowest = phase
+                }
+            }
+            if (slowest != null) {
+                addData(
+                    "Worst",
+                    "%.1f ms (%s %.1f ms)",
+                    worstTickNs / 1e6,
+                    slowest.name,
+                    worstBreakdown[slowest.id] / 1e6,
+                )
+            }
+        }
+
+    /** Writes the last tick's duration, and every phase's statistics at most four times a second. */
+    context(packet: TelemetryPacket)
+    fun writePacket() {
+        if (ticks.size == 0) return
+        packet.put("loop/tick", ticks.values[(ticks.next + WINDOW - 1) % WINDOW] / 1e6)
+
+        val now = nanoTime()
+        if (now - lastPacketNs < PACKET_INTERVAL_NS) return
+        lastPacketNs = now
+
+        val tick = tickSummary()
+        packet.put("loop/tick/p50", tick.p50Ms)
+        packet.put("loop/tick/p95", tick.p95Ms)
+        packet.put("loop/tick/max", tick.maxMs)
+        packet.put("loop/worst", worstTickNs / 1e6)
+        for (phase in phases) {
+            if (phase.window.size == 0) continue
+            val summary = phase.window.summary(phase.name)
+            packet.put(phase.p50Key, summary.p50Ms)
+            packet.put(phase.p95Key, summary.p95Ms)
+            packet.put(phase.maxKey, summary.maxMs)
+        }
+    }
+}
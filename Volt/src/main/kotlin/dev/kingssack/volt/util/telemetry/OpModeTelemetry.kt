@@ -0,0 +1,54 @@
+package dev.kingssack.volt.util.telemetry
+
+import dev.kingssack.volt.robot.Robot
+import org.firstinspires.ftc.robotcore.external.Telemetry
+
+/**
+ * The telemetry an OpMode writes its own lines to.
+ *
+ * Lines are recorded and written to the Driver Station telemetry on [update], so they behave like
+ * plain telemetry. [Robot.update] only refreshes telemetry at the Driver Station refresh rate, so
+ * on other ticks it calls [endTick] instead of sending: the tick's lines are kept until the next
+ * refresh, and a line written again on a later tick replaces the one with the same caption rather
+ * than being listed twice. Lines written on a single tick are still shown once.
+ */
+class OpModeTelemetry internal constructor(target: Telemetry) : RecordingTelemetry(target) {
+    override val recording: Boolean
+        get() = true
+
+    // Replaces the earliest line with the same caption that was written before this tick, so the
+    // nth line with a caption on every tick lands in the same place
+    override fun entryFor(caption: String, kind: Int): Entry {
+        for (i in 0 until size) {
+            val entry = entry(i)
+            if (entry.stale && entry.kind == kind && entry.caption == caption) return entry
+        }
+        return append()
+    }
+
+    /** Keeps the tick's lines for the next refresh instead of sending them. */
+    fun endTick() {
+        for (i in 0 until size) entry(i).stale = true
+    }
+
+    /** Writes the recorded lines to the Driver Station telemetry without sending them. */
+    fun flush() {
+        flushEntries()
+        clearEntries()
+    }
+
+    override fun update(): Boolean {
+        flush()
+        return target.update()
+    }
+
+    override fun clear() {
+        clearEntries()
+        target.clear()
+    }
+
+    override fun clearAll() {
+        clearEntries()
+        target.clearAll()
+    }
+}
@@ -0,0 +1,197 @@
+package dev.kingssack.volt.util.telemetry
+
+import org.firstinspires.ftc.robotcore.external.Func
+import org.firstinspires.ftc.robotcore.external.Telemetry
+
+/**
+ * A [Telemetry] that records lines and writes them to its target when flushed.
+ *
+ * Entries are pooled, so recording does not allocate once the pool has grown. Writes are dropped
+ * without being formatted while [recording] is false, so callers should prefer the
+ * `addData(caption, format, args)` and [Func] overloads over pre-formatted strings. Data added
+ * through the [Telemetry.Line] returned by [addLine] is recorded as part of that line. Items can
+ * not be changed after they are added.
+ */
+abstract class RecordingTelemetry internal constructor(protected val target: Telemetry) :
+    Telemetry by target {
+    internal class Entry {
+        var caption = ""
+        var kind = DATA
+        var format: String? = null
+        var args: Array<out Any?>? = null
+        var value: Any? = null
+        var stale = false
+    }
+
+    private val entries = ArrayList<Entry>()
+
+    /** How many entries are recorded. */
+    internal var size = 0
+        private set
+
+    /** Whether writes are currently being recorded. */
+    abstract val recording: Boolean
+
+    /** Gets the entry to record a write in, by default a new one after every other. */
+    internal open fun entryFor(caption: String, kind: Int): Entry = append()
+
+    internal fun append(): Entry {
+        if (size == entries.size) entries.add(Entry())
+        return entries[size++]
+    }
+
+    internal fun entry(index: Int): Entry = entries[index]
+
+    /** Discards every recorded entry. */
+    internal fun clearEntries() {
+        size = 0
+    }
+
+    /** Writes every recorded entry to the target. */
+    internal fun flushEntries() {
+        var line: Telemetry.Line? = null
+        for (i in 0 until size) {
+            val entry = entries[i]
+            when (entry.kind) {
+                LINE -> line = target.addLine(entry.caption)
+                LINE_DATA -> write(entry, line)
+                else -> {
+                    line = null
+                    write(entry, null)
+                }
+            }
+        }
+    }
+
+    private fun write(entry: Entry, line: Telemetry.Line?) {
+        val format = entry.format
+        val args = entry.args
+        when {
+            line == null && format != null && args != null ->
+                target.addData(entry.caption, format, *args)
+            line == null && format != null -> target.addData(entry.caption, format, entry.value)
+            line == null -> target.addData(entry.caption, entry.value)
+            format != null && args != null -> line.addData(entry.caption, format, *args)
+            format != null -> line.addData(entry.caption, format, entry.value)
+            else -> line.addData(entry.caption, entry.value)
+        }
+    }
+
+    private fun record(
+        caption: String,
+        kind: Int,
+        format: String? = null,
+        args: Array<out Any?>? = null,
+        value: Any? = null,
+    ) {
+        entryFor(caption, kind).apply {
+            this.caption = caption
+            this.kind = kind
+            this.format = format
+            this.args = args
+            this.value = value
+            stale = false
+        }
+    }
+
+    override fun addData(caption: String, format: String, vararg args: Any?): Telemetry.Item {
+        if (recording) record(caption, DATA, format = format, args = args)
+        return DiscardedItem
+    }
+
+    override fun addData(caption: String, value: Any?): Telemetry.Item {
+        if (recording) record(caption, DATA, value = value)
+        return DiscardedItem
+    }
+
+    override fun <T> addData(caption: String, valueProducer: Func<T>): Telemetry.Item {
+        if (recording) record(caption, DATA, value = valueProducer.value())
+        return DiscardedItem
+    }
+
+    override fun <T> addData(
+        caption: String,
+        format: String,
+        valueProducer: Func<T>,
+    ): Telemetry.Item {
+        if (recording) record(caption, DATA, format = format, value = valueProducer.value())
+        return DiscardedItem
+    }
+
+    override fun addLine(): Telemetry.Line {
+        if (recording) record("", LINE)
+        return line
+    }
+
+    override fun addLine(lineCaption: String): Telemetry.Line {
+        if (recording) record(lineCaption, LINE)
+        return line
+    }
+
+    // Data added to a line follows it, so one line is enough to hand out for every caller
+    private val line =
+        object : Telemetry.Line {
+            override fun addData(
+                caption: String,
+                format: String,
+                vararg args: Any?,
+            ): Telemetry.Item {
+                if (recording) record(caption, LINE_DATA, format = format, args = args)
+                return DiscardedItem
+            }
+
+            override fun addData(caption: String, value: Any?): Telemetry.Item {
+                if (recording) record(caption, LINE_DATA, value = value)
+                return DiscardedItem
+            }
+
+            override fun <T> addData(caption: String, valueProducer: Func<T>): Telemetry.Item {
+                if (recording) record(caption, LINE_DATA, value = valueProducer.value())
+                return DiscardedItem
+            }
+
+            override fun <T> addData(
+                caption: String,
+                format: String,
+                valueProducer: Func<T>,
+            ): Telemetry.Item {
+                if (recording) {
+                    record(caption, LINE_DATA, format = format, value = valueProducer.value())
+                }
+                return DiscardedItem
+            }
+        }
+
+    /** Returned for writes that are recorded or dropped, so callers can still chain on them. */
+    private object DiscardedItem : Telemetry.Item {
+        override fun getCaption() = ""
+
+        override fun setCaption(caption: String) = this
+
+        override fun setValue(format: String, vararg args: Any?) = this
+
+        override fun setValue(value: Any?) = this
+
+        override fun <T> setValue(valueProducer: Func<T>) = this
+
+        override fun <T> setValue(format: String, valueProducer: Func<T>) = this
+
+        override fun setRetained(retained: Boolean?) = this
+
+        override fun isRetained() = false
+
+        override fun addData(caption: String, format: String, vararg args: Any?) = this
+
+        override fun addData(caption: String, value: Any?) = this
+
+        override fun <T> addData(caption: String, valueProducer: Func<T>) = this
+
+        override fun <T> addData(caption: String, format: String, valueProducer: Func<T>) = this
+    }
+
+    internal companion object {
+        const val DATA = 0
+        const val LINE = 1
+        const val LINE_DATA = 2
+    }
+}
@@ -0,0 +1,114 @@
+package dev.kingssack.volt.util.telemetry
+
+import dev.kingssack.volt.attachment.Attachment
+import dev.kingssack.volt.attachment.AttachmentState
+import java.lang.System.nanoTime
+import java.util.IdentityHashMap
+import org.firstinspires.ftc.robotcore.external.Telemetry
+
+/**
+ * Schedules attachment telemetry so it is only formatted and sent at the Driver Station refresh rate.
+ *
+ * Attachments still update every tick, but they write into a [TelemetrySection] that discards
+ * writes unless the section is due. A section is due on a refresh tick once its attachment's
+ * [Attachment.telemetryPeriodMs] has elapsed or its state has changed since it was last sampled.
+ * Sections that are not due keep showing their last sampled lines.
+ *
+ * @param refreshIntervalMs the time between refreshes, or null to follow the telemetry's own
+ *   transmission interval
+ */
+class TelemetryScheduler(private val refreshIntervalMs: Int? = null) {
+    private val sections = IdentityHashMap<Attachment, TelemetrySection>()
+    private val ordered = ArrayList<TelemetrySection>()
+
+    private var lastRefreshNs = 0L
+    private var refreshed = false
+    private var tickNs = 0L
+
+    /** Whether the current tick refreshes telemetry. */
+    var refreshing = false
+        private set
+
+    /**
+     * Starts a tick and decides whether it refreshes [telemetry].
+     *
+     * @return whether this tick refreshes telemetry
+     */
+    fun beginTick(telemetry: Telemetry): Boolean {
+        tickNs = nanoTime()
+        val intervalNs = (refreshIntervalMs ?: telemetry.msTransmissionInterval) * 1_000_000L
+        refreshing = !refreshed || tickNs - lastRefreshNs >= intervalNs
+        if (refreshing) {
+            lastRefreshNs = tickNs
+            refreshed = true
+        }
+        return refreshing
+    }
+
+    /**
+     * Gets the section [attachment] should write its telemetry to this tick.
+     *
+     * @param telemetry the telemetry the section is flushed to
+     * @return a [Telemetry] that records writes only when the section is due
+     */
+    fun sample(attachment: Attachment, telemetry: Telemetry): Telemetry {
+        val section =
+            sections.getOrPut(attachment) {
+                TelemetrySection(attachment, telemetry).also {
+                    ordered.add(it)
+                    ordered.sortByDescending { section -> section.attachment.telemetryPriority }
+                }
+            }
+        section.begin(refreshing && section.isDue(tickNs), tickNs)
+        return section
+    }
+
+    /** Writes the last sampled lines of every section to its telemetry, highest priority first. */
+    fun flush() {
+        for (i in ordered.indices) ordered[i].flush()
+    }
+
+    /** Discards every section, e.g. when the robot is rebuilt. */
+    fun clear() {
+        sections.clear()
+        ordered.clear()
+        refreshed = false
+    }
+}
+
+/**
+ * A [Telemetry] that buffers an attachment's lines until they are flushed.
+ *
+ * Writes are only recorded on ticks where the section is due, and the last recorded lines are
+ * flushed on every refresh.
+ */
+class TelemetrySection
+internal constructor(internal val attachment: Attachment, target: Telemetry) :
+    RecordingTelemetry(target) {
+    private var sampled = false
+    private var lastSampleNs = 0L
+    private var lastState: AttachmentState? = null
+
+    /** Whether writes to this section are currently being recorded. */
+    override var recording = false
+        private set
+
+    internal fun isDue(nowNs: Long): Boolean {
+        if (!sampled || lastState !== attachment.state.value) return true
+        return nowNs - lastSampleNs >= attachment.telemetryPeriodMs * 1_000_000L
+    }
+
+    internal fun begin(record: Boolean, nowNs: Long) {
+        recording = record
+        if (!record) return
+        clearEntries()
+        sampled = true
+        lastSampleNs = nowNs
+        lastState = attachment.state.value
+    }
+
+    internal fun flush() {
+        flushEntries()
+        target.addLine()
+    }
+}
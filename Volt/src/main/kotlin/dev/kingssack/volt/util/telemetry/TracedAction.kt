@@ -2,6 +2,9 @@ package dev.kingssack.volt.util.telemetry
 
 import com.acmerobotics.dashboard.telemetry.TelemetryPacket
 import com.acmerobotics.roadrunner.Action
+import dev.kingssack.volt.core.RearmableAction
+import dev.kingssack.volt.core.isRearmable
+import dev.kingssack.volt.core.rearmIfNeeded
 
 /**
  * TracedAction is a wrapper around an Action that tracks its execution time and reports it to an ActionTracer.
@@ -14,35 +17,62 @@ class TracedAction(
     val label: String,
     private val inner: Action,
     private val trace: ActionTracer = ActionTracer,
-) : Action {
-    var startTime: Long? = null
+) : RearmableAction {
+    override val canRearm = inner.isRearmable
+
+    internal val stats = trace.stats(label)
+    internal var slot = -1
+
+    /** Whether the action has started running. */
+    var started = false
+        private set
+
+    /** Whether the action has finished running. */
+    var finished = false
+        private set
+
+    // Kept as primitives so tracing does not box a timestamp on every run
+    internal var startNs = 0L
         private set
 
-    var endTime: Long? = null
+    internal var endNs = 0L
         private set
 
+    /** The [System.nanoTime] the action started at, or null if it has not started. */
+    val startTime: Long?
+        get() = if (started) startNs else null
+
+    /** The [System.nanoTime] the action finished at, or null if it has not finished. */
+    val endTime: Long?
+        get() = if (finished) endNs else null
+
     val elapsedMs: Long
         get() =
             when {
-                startTime == null -> 0L
-                endTime != null -> (endTime!! - startTime!!) / 1_000_000
-                else -> (System.nanoTime() - startTime!!) / 1_000_000
+                !started -> 0L
+                finished -> (endNs - startNs) / 1_000_000
+                else -> (System.nanoTime() - startNs) / 1_000_000
             }
 
-    private var initialized = false
-
     override fun run(p: TelemetryPacket): Boolean {
-        if (!initialized) {
-            startTime = System.nanoTime()
+        if (!started) {
+            startNs = System.nanoTime()
+            started = true
             trace.markRunning()
-            initialized = true
         }
 
         val running = inner.run(p)
         if (!running) {
-            endTime = System.nanoTime()
+            endNs = System.nanoTime()
+            finished = true
             trace.markCompleted()
         }
         return running
     }
+
+    override fun rearm() {
+        started = false
+        finished = false
+        inner.rearmIfNeeded()
+    }
 }